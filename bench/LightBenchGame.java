@@ -0,0 +1,81 @@
+import java.util.Random;
+
+import javalib.impworld.WorldScene;
+import lightemall.bench.BenchGame;
+
+// Represents a light game as the benchmarks see it from their own package
+public class LightBenchGame implements BenchGame {
+  LightEmAll game;
+
+  public LightBenchGame(int width, int height, long seed) {
+    this.game = new LightEmAll(width, height);
+    this.game.engine.rand = new Random(seed);
+    this.game.generateBoard();
+  }
+
+  public int width() {
+    return this.game.engine.width;
+  }
+
+  public int height() {
+    return this.game.engine.height;
+  }
+
+  public void generateBoard() {
+    this.game.generateBoard();
+  }
+
+  public void initializeEmptyBoard() {
+    this.game.engine.initializeEmptyBoard();
+  }
+
+  public void generateConnectionsFromMST() {
+    this.game.engine.generateConnectionsFromMST();
+  }
+
+  public int calculateDiameter() {
+    return this.game.engine.calculateDiameter();
+  }
+
+  public void randomizeRotations() {
+    this.game.engine.randomizeRotations();
+  }
+
+  public void turn(int row, int col) {
+    this.game.engine.store.rotate(this.game.engine.store.index(row, col));
+  }
+
+  public void rotate(int row, int col) {
+    this.game.engine.rotate(row, col);
+  }
+
+  public void updatePower() {
+    this.game.engine.updatePower();
+  }
+
+  public void movePowerStation(String key) {
+    this.game.engine.movePowerStation(key);
+  }
+
+  public boolean allPowered() {
+    return this.game.engine.allPowered();
+  }
+
+  public void setRetainedRendering(boolean retained) {
+    this.game.retainedRendering = retained;
+  }
+
+  public void setViewport(int rows, int cols) {
+    this.game.setViewport(rows, cols);
+  }
+
+  public Object drawBoard() {
+    WorldScene scene = new WorldScene(this.game.viewCols * 50, this.game.viewRows * 50);
+    this.game.drawBoard(scene);
+    return scene;
+  }
+
+  public Object makeScene() {
+    return this.game.makeScene();
+  }
+}
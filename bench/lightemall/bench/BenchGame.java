@@ -0,0 +1,61 @@
+package lightemall.bench;
+
+// Represents the operations of a light game that the benchmarks measure. JMH cannot generate
+// benchmarks for classes in the default package, where the game lives, so the benchmarks
+// reach the game through this interface, implemented by LightBenchGame in the default package
+public interface BenchGame {
+  // Make a game of the given size, whose boards are generated from the given seed
+  static BenchGame create(int width, int height, long seed) {
+    try {
+      return (BenchGame) Class.forName("LightBenchGame")
+              .getConstructor(int.class, int.class, long.class)
+              .newInstance(width, height, seed);
+    }
+    catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("LightBenchGame is not on the class path", e);
+    }
+  }
+
+  // the width and height of the board
+  int width();
+
+  int height();
+
+  // Generate a new scrambled board, with all of its phases
+  void generateBoard();
+
+  // The phases of generating a board: empty the board, wire it from a new spanning tree,
+  // measure its diameter and scramble it
+  void initializeEmptyBoard();
+
+  void generateConnectionsFromMST();
+
+  int calculateDiameter();
+
+  void randomizeRotations();
+
+  // Turn the tile at the given row and column once, without updating the power
+  void turn(int row, int col);
+
+  // Rotate the tile at the given row and column as a click does, repairing the power
+  void rotate(int row, int col);
+
+  // Recompute the power of the whole board
+  void updatePower();
+
+  // Move the power station by the given key and recompute the power
+  void movePowerStation(String key);
+
+  boolean allPowered();
+
+  // Choose how the scene is drawn, and how many rows and columns of tiles it shows
+  void setRetainedRendering(boolean retained);
+
+  void setViewport(int rows, int cols);
+
+  // Draw the tiles in the window on to a new scene, and return the scene
+  Object drawBoard();
+
+  // Make the scene of the game, and return it
+  Object makeScene();
+}
@@ -0,0 +1,58 @@
+package lightemall.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures generating a whole board, and each phase of it on its own
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerationBenchmark {
+  // the width and height of the board
+  @Param({"10", "100", "500", "1000", "2000"})
+  int size;
+
+  BenchGame game;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.game = BenchGame.create(this.size, this.size, 42);
+  }
+
+  @Benchmark
+  public void generateBoard() {
+    this.game.generateBoard();
+  }
+
+  @Benchmark
+  public void initializeEmptyBoard() {
+    this.game.initializeEmptyBoard();
+  }
+
+  // A new spanning tree only depends on the size of the board, so wiring the same
+  // board again does the same work as wiring an empty one
+  @Benchmark
+  public void generateConnectionsFromMST() {
+    this.game.generateConnectionsFromMST();
+  }
+
+  @Benchmark
+  public void randomizeRotations() {
+    this.game.randomizeRotations();
+  }
+}
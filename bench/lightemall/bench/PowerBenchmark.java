@@ -0,0 +1,105 @@
+package lightemall.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures the power of a solved board: recomputing or repairing it after a rotation,
+// moving the power station, checking for a win and measuring the diameter
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PowerBenchmark {
+  // the number of random tiles and keys drawn ahead of the measurement
+  static final int DRAWS = 1024;
+  static final String[] KEYS = new String[] {"left", "right", "up", "down"};
+
+  // the width and height of the board
+  @Param({"10", "100", "500", "1000", "2000"})
+  int size;
+
+  BenchGame game;
+  // the rows and columns of the tiles to rotate, the keys to move the station by,
+  // and the next of each to use
+  int[] rows;
+  int[] cols;
+  String[] keys;
+  int next;
+
+  // Wire the board from its spanning tree without scrambling it, so that the power
+  // traverses the whole board
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.game = BenchGame.create(this.size, this.size, 42);
+    this.game.initializeEmptyBoard();
+    this.game.generateConnectionsFromMST();
+    this.game.updatePower();
+
+    Random rand = new Random(7);
+    this.rows = new int[DRAWS];
+    this.cols = new int[DRAWS];
+    this.keys = new String[DRAWS];
+    for (int i = 0; i < DRAWS; i++) {
+      this.rows[i] = rand.nextInt(this.size);
+      this.cols[i] = rand.nextInt(this.size);
+      this.keys[i] = KEYS[rand.nextInt(KEYS.length)];
+    }
+  }
+
+  // Turn a random tile four times, recomputing the power of the whole board after every
+  // turn, which leaves the board as it was
+  @Benchmark
+  @OperationsPerInvocation(4)
+  public boolean updatePowerAfterRotation() {
+    int draw = this.next++ & (DRAWS - 1);
+    for (int turn = 0; turn < 4; turn++) {
+      this.game.turn(this.rows[draw], this.cols[draw]);
+      this.game.updatePower();
+    }
+    return this.game.allPowered();
+  }
+
+  // Click a random tile four times, repairing the power after every click
+  @Benchmark
+  @OperationsPerInvocation(4)
+  public boolean repairPowerAfterRotation() {
+    int draw = this.next++ & (DRAWS - 1);
+    for (int turn = 0; turn < 4; turn++) {
+      this.game.rotate(this.rows[draw], this.cols[draw]);
+    }
+    return this.game.allPowered();
+  }
+
+  @Benchmark
+  public boolean movePowerStation() {
+    this.game.movePowerStation(this.keys[this.next++ & (DRAWS - 1)]);
+    return this.game.allPowered();
+  }
+
+  @Benchmark
+  public boolean allPowered() {
+    return this.game.allPowered();
+  }
+
+  // Measuring the diameter traverses the whole board twice
+  @Benchmark
+  public int calculateDiameter() {
+    return this.game.calculateDiameter();
+  }
+}
@@ -0,0 +1,83 @@
+package lightemall.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures drawing the window of a board, placing every tile or from the retained layer
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+  // the number of random tiles drawn ahead of the measurement
+  static final int DRAWS = 1024;
+
+  // the width and height of the board
+  @Param({"10", "100", "500", "1000", "2000"})
+  int size;
+
+  // the rows and columns of tiles in the window, at most the whole board
+  @Param({"20"})
+  int view;
+
+  // whether the scene is drawn from the retained board layer
+  @Param({"false", "true"})
+  boolean retained;
+
+  BenchGame game;
+  // the rows and columns in the window of the tiles to rotate, and the next one to use
+  int[] rows;
+  int[] cols;
+  int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.game = BenchGame.create(this.size, this.size, 42);
+    this.game.setViewport(this.view, this.view);
+    this.game.setRetainedRendering(this.retained);
+    this.game.makeScene();
+
+    int shown = Math.min(this.view, this.size);
+    Random rand = new Random(7);
+    this.rows = new int[DRAWS];
+    this.cols = new int[DRAWS];
+    for (int i = 0; i < DRAWS; i++) {
+      this.rows[i] = rand.nextInt(shown);
+      this.cols[i] = rand.nextInt(shown);
+    }
+  }
+
+  @Benchmark
+  public Object drawBoard() {
+    return this.game.drawBoard();
+  }
+
+  // A frame where nothing changed
+  @Benchmark
+  public Object makeScene() {
+    return this.game.makeScene();
+  }
+
+  // A frame after a click on a tile in the window
+  @Benchmark
+  public Object makeSceneAfterRotation() {
+    int draw = this.next++ & (DRAWS - 1);
+    this.game.rotate(this.rows[draw], this.cols[draw]);
+    return this.game.makeScene();
+  }
+}
@@ -4,6 +4,10 @@ import tester.*;
 public class App {
   public static void main(String[] args) {
     LightEmAll game = new LightEmAll(10, 10);
-    game.bigBang(500, 540, 1);
+    // Keep the versions of the board, so Z and Y undo and redo
+    game.engine.keepHistory();
+    // Show at most 10 by 10 tiles, so the window keeps its size on bigger boards
+    game.setViewport(10, 10);
+    game.bigBang(game.viewCols * 50, game.viewRows * 50 + 40, 1);
   }
 }
\ No newline at end of file
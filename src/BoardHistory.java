@@ -0,0 +1,80 @@
+import java.util.Arrays;
+
+// Represents the history of a game as versions of its board, each the wires of every tile as
+// a WireTrie with the place of the power station, for undo and redo without limit. Every
+// move adds a version sharing all but one leaf of the wires with the one before it, and
+// going back or forth only turns the tiles the two versions do not share
+class BoardHistory {
+  // the wires and the power station tile of every version, the number of versions, and the
+  // index of the version the board is at
+  WireTrie[] wires;
+  int[] stations;
+  int count;
+  int current;
+
+  // Start the history of the given game at its board as it is now
+  BoardHistory(LightEngine engine) {
+    this.wires = new WireTrie[16];
+    this.stations = new int[16];
+    this.wires[0] = WireTrie.of(engine.store);
+    this.stations[0] = engine.station();
+    this.count = 1;
+    this.current = 0;
+  }
+
+  // Get the version of the wires the board is at, which stays as it is whatever is played
+  WireTrie version() {
+    return this.wires[this.current];
+  }
+
+  // Add a version of the board after the tile at the given index of the given game rotated
+  // EFFECT: forget the versions that were undone, and add the new version
+  void rotated(int tile, LightEngine engine) {
+    this.add(this.version().set(tile, engine.store.wires(tile)), engine.station());
+  }
+
+  // Add a version of the board after the power station of the given game moved
+  // EFFECT: forget the versions that were undone, and add the new version
+  void moved(LightEngine engine) {
+    this.add(this.version(), engine.station());
+  }
+
+  // Add the given wires and power station as the version after the current one
+  // EFFECT: forget the versions that were undone, and add the new version
+  void add(WireTrie wires, int station) {
+    // Let the undone versions be collected
+    Arrays.fill(this.wires, this.current + 1, this.count, null);
+    this.current++;
+    this.count = this.current + 1;
+    if (this.count > this.wires.length) {
+      this.wires = Arrays.copyOf(this.wires, this.wires.length * 2);
+      this.stations = Arrays.copyOf(this.stations, this.stations.length * 2);
+    }
+    this.wires[this.current] = wires;
+    this.stations[this.current] = station;
+  }
+
+  // Check if there is a version before the current one
+  boolean canUndo() {
+    return this.current > 0;
+  }
+
+  // Check if there is a version after the current one, that was undone
+  boolean canRedo() {
+    return this.current + 1 < this.count;
+  }
+
+  // Turn the board of the given game to the version the given number of versions away from
+  // the current one, and return the number of tiles turned
+  // EFFECT: change the wires of the tiles that differ, the power station and the version
+  int go(int steps, LightEngine engine) {
+    int target = this.current + steps;
+    int turned = this.version().restore(this.wires[target], engine.store);
+    this.current = target;
+    engine.store.setStation(engine.station(), false);
+    int station = this.stations[target];
+    engine.powerRow = station % engine.width;
+    engine.powerCol = station / engine.width;
+    return turned;
+  }
+}
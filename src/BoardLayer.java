@@ -0,0 +1,164 @@
+import java.util.BitSet;
+import javalib.worldimages.*;
+
+// Represents the retained image of a window of a board, kept as a segment tree of tile
+// images beside each other for every row and a segment tree of row images above each other,
+// so a changed tile only rebuilds the images on its path to the root
+class BoardLayer {
+  // the store this layer is drawn from, and the radius its colors are drawn for
+  BoardStore store;
+  int radius;
+  // the first row and column of the window of the board this layer shows,
+  // and the number of rows and columns in it
+  int top;
+  int left;
+  int rows;
+  int cols;
+  // the images of the tiles, each a whole number of tile widths wide
+  TileImageCache tiles;
+  // the image key each tile of the window was last drawn with, in row-major order
+  short[] keys;
+  // the segment tree of tile images of each row of the window, with its root at slot 1
+  WorldImage[][] rowTrees;
+  // the segment tree of row images, with its root at slot 1
+  WorldImage[] column;
+
+  // Draw every tile of the given store
+  BoardLayer(BoardStore store, TileImageCache tiles, int radius) {
+    this(store, tiles, radius, 0, 0, store.height, store.width);
+  }
+
+  // Draw every tile in the given window of the given store
+  BoardLayer(BoardStore store, TileImageCache tiles, int radius,
+             int top, int left, int rows, int cols) {
+    this.store = store;
+    this.radius = radius;
+    this.tiles = tiles;
+    this.top = top;
+    this.left = left;
+    this.rows = rows;
+    this.cols = cols;
+    this.keys = new short[rows * cols];
+    this.rowTrees = new WorldImage[rows][4 * cols];
+    this.column = new WorldImage[4 * rows];
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < cols; col++) {
+        this.keys[row * cols + col] = (short) this.key(store.index(top + row, left + col));
+      }
+      this.buildRow(row, 1, 0, cols);
+    }
+    this.buildColumn(1, 0, rows);
+    store.changed.clear();
+  }
+
+  // Check if this layer shows the given window of the given store with the given radius
+  boolean shows(BoardStore store, int radius, int top, int left, int rows, int cols) {
+    return this.store == store && this.radius == radius && this.top == top
+            && this.left == left && this.rows == rows && this.cols == cols;
+  }
+
+  // Get the image of the whole window
+  WorldImage image() {
+    return this.column[1];
+  }
+
+  // Get the image key the tile at the given index should be drawn with
+  int key(int tile) {
+    int bucket = GamePiece.colorBucket(this.store.isPowered(tile), this.store.distance(tile),
+            this.radius);
+    return TileImageCache.key(this.store.wires(tile), bucket, this.store.isStation(tile));
+  }
+
+  // Bring this layer up to date with the tiles of its window that changed since it was
+  // last drawn, and tell how many tiles had to be redrawn
+  // EFFECT: rebuild the paths of the redrawn tiles and clear the changed tiles of the store
+  int update() {
+    BitSet changed = this.store.changed;
+    int redrawn = 0;
+    for (int row = 0; row < this.rows; row++) {
+      int first = this.store.index(this.top + row, this.left);
+      int end = first + this.cols;
+      boolean dirty = false;
+      for (int tile = changed.nextSetBit(first); tile >= 0 && tile < end;
+           tile = changed.nextSetBit(tile + 1)) {
+        int key = this.key(tile);
+        int slot = row * this.cols + tile - first;
+        if (key != this.keys[slot]) {
+          this.keys[slot] = (short) key;
+          this.setTile(row, 1, 0, this.cols, tile - first);
+          dirty = true;
+          redrawn++;
+        }
+      }
+      if (dirty) {
+        this.setRow(1, 0, this.rows, row);
+      }
+    }
+    changed.clear();
+    return redrawn;
+  }
+
+  // Build the given node of the tree of the given row of the window,
+  // covering the columns of the window from lo to hi
+  // EFFECT: change the images of the node and every node under it
+  void buildRow(int row, int node, int lo, int hi) {
+    if (hi - lo == 1) {
+      this.rowTrees[row][node] = this.tiles.image(this.keys[row * this.cols + lo]);
+      return;
+    }
+    int mid = (lo + hi) / 2;
+    this.buildRow(row, node * 2, lo, mid);
+    this.buildRow(row, node * 2 + 1, mid, hi);
+    this.rowTrees[row][node] = new BesideImage(this.rowTrees[row][node * 2],
+            this.rowTrees[row][node * 2 + 1]);
+  }
+
+  // Rebuild the path from the given node of the tree of the given row of the window
+  // down to the given column of the window
+  // EFFECT: change the images of the nodes on the path
+  void setTile(int row, int node, int lo, int hi, int col) {
+    if (hi - lo == 1) {
+      this.rowTrees[row][node] = this.tiles.image(this.keys[row * this.cols + lo]);
+      return;
+    }
+    int mid = (lo + hi) / 2;
+    if (col < mid) {
+      this.setTile(row, node * 2, lo, mid, col);
+    }
+    else {
+      this.setTile(row, node * 2 + 1, mid, hi, col);
+    }
+    this.rowTrees[row][node] = new BesideImage(this.rowTrees[row][node * 2],
+            this.rowTrees[row][node * 2 + 1]);
+  }
+
+  // Build the given node of the rows' tree, covering the rows of the window from lo to hi
+  // EFFECT: change the images of the node and every node under it
+  void buildColumn(int node, int lo, int hi) {
+    if (hi - lo == 1) {
+      this.column[node] = this.rowTrees[lo][1];
+      return;
+    }
+    int mid = (lo + hi) / 2;
+    this.buildColumn(node * 2, lo, mid);
+    this.buildColumn(node * 2 + 1, mid, hi);
+    this.column[node] = new AboveImage(this.column[node * 2], this.column[node * 2 + 1]);
+  }
+
+  // Rebuild the path from the given node of the rows' tree down to the given row of the window
+  // EFFECT: change the images of the nodes on the path
+  void setRow(int node, int lo, int hi, int row) {
+    if (hi - lo == 1) {
+      this.column[node] = this.rowTrees[lo][1];
+      return;
+    }
+    int mid = (lo + hi) / 2;
+    if (row < mid) {
+      this.setRow(node * 2, lo, mid, row);
+    }
+    else {
+      this.setRow(node * 2 + 1, mid, hi, row);
+    }
+    this.column[node] = new AboveImage(this.column[node * 2], this.column[node * 2 + 1]);
+  }
+}
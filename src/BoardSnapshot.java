@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Represents the binary snapshot format of a game, saved and loaded through memory-mapped
+// files. A snapshot is a fixed header followed by the wires of every tile, 4 bits per tile
+// and two tiles per byte, the first tile of each pair in the low bits:
+//   magic "LEMA", version (short), flags (short, 0), width, height, power row, power column,
+//   radius, score, tick (ints), seed (long), then (width * height + 1) / 2 bytes of wires
+// The power state and distances are not saved, since one traversal rebuilds them
+class BoardSnapshot {
+  static final int MAGIC = 0x4C454D41;
+  static final short VERSION = 1;
+  static final int HEADER_BYTES = 44;
+  // the number of bytes of wires packed or unpacked at a time
+  static final int CHUNK = 65536;
+
+  // Get the number of bytes in a snapshot of a board with the given number of tiles
+  static long bytes(int tiles) {
+    return HEADER_BYTES + (tiles + 1L) / 2;
+  }
+
+  // Save a snapshot of the given game to the file at the given path, replacing it
+  // EFFECT: write the file
+  static void save(LightEngine engine, Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      MappedByteBuffer buffer =
+              channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes(engine.store.size()));
+      write(engine, buffer);
+      buffer.force();
+    }
+  }
+
+  // Load the game in the snapshot in the file at the given path, with its power updated
+  static LightEngine load(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  // Write a snapshot of the given game to the given buffer, from its position
+  // EFFECT: advance the position of the buffer past the snapshot
+  static void write(LightEngine engine, ByteBuffer buffer) {
+    buffer.putInt(MAGIC);
+    buffer.putShort(VERSION);
+    buffer.putShort((short) 0);
+    buffer.putInt(engine.width);
+    buffer.putInt(engine.height);
+    buffer.putInt(engine.powerRow);
+    buffer.putInt(engine.powerCol);
+    buffer.putInt(engine.radius);
+    buffer.putInt(engine.score);
+    buffer.putInt(engine.tick);
+    buffer.putLong(engine.seed);
+
+    byte[] tiles = engine.store.tiles;
+    byte[] chunk = new byte[Math.min(CHUNK, (tiles.length + 1) / 2)];
+    for (int first = 0; first < tiles.length; first += 2 * CHUNK) {
+      int count = 0;
+      for (int tile = first; tile < tiles.length && count < CHUNK; tile += 2) {
+        int high = 0;
+        if (tile + 1 < tiles.length) {
+          high = tiles[tile + 1] & 15;
+        }
+        chunk[count] = (byte) ((tiles[tile] & 15) | (high << 4));
+        count++;
+      }
+      buffer.put(chunk, 0, count);
+    }
+  }
+
+  // Read the game in the snapshot in the given buffer, from its position, with its power
+  // updated
+  // EFFECT: advance the position of the buffer past the snapshot
+  static LightEngine read(ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+      throw new IOException("not a board snapshot");
+    }
+    short version = buffer.getShort();
+    buffer.getShort();
+    if (version != VERSION) {
+      throw new IOException("unknown board snapshot version " + version);
+    }
+    int width = buffer.getInt();
+    int height = buffer.getInt();
+    int powerRow = buffer.getInt();
+    int powerCol = buffer.getInt();
+    int radius = buffer.getInt();
+    int score = buffer.getInt();
+    int tick = buffer.getInt();
+    long seed = buffer.getLong();
+    if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE
+            || powerRow < 0 || powerRow >= width || powerCol < 0 || powerCol >= height
+            || buffer.remaining() < bytes(width * height) - HEADER_BYTES) {
+      throw new IOException("corrupt board snapshot");
+    }
+
+    BoardStore store = new BoardStore(width, height);
+    byte[] tiles = store.tiles;
+    byte[] chunk = new byte[Math.min(CHUNK, (tiles.length + 1) / 2)];
+    for (int first = 0; first < tiles.length; first += 2 * CHUNK) {
+      int count = Math.min(CHUNK, (tiles.length - first + 1) / 2);
+      buffer.get(chunk, 0, count);
+      for (int i = 0; i < count; i++) {
+        int tile = first + 2 * i;
+        tiles[tile] = (byte) (chunk[i] & 15);
+        if (tile + 1 < tiles.length) {
+          tiles[tile + 1] = (byte) ((chunk[i] >> 4) & 15);
+        }
+      }
+    }
+    store.changed.set(0, tiles.length);
+
+    LightEngine engine = new LightEngine(store, new KruskalGenerator());
+    engine.powerRow = powerRow;
+    engine.powerCol = powerCol;
+    engine.radius = radius;
+    engine.score = score;
+    engine.tick = tick;
+    engine.reseed(seed);
+    engine.updatePower();
+    return engine;
+  }
+}
@@ -0,0 +1,600 @@
+import java.util.Arrays;
+
+// Represents a solver that finds rotations of every tile of a board that make its wires
+// a spanning tree, by propagating edge-agreement constraints between neighbors, dropping
+// the options that fail on their own, and backtracking over the options of a tile only
+// when propagation stalls
+class BoardSolver {
+  // the states of an edge between two tiles
+  static final byte UNKNOWN = 0;
+  static final byte ON = 1;
+  static final byte OFF = 2;
+  // the kinds of change recorded on the trail, so a failed branch can be undone
+  static final int TRAIL_OPTIONS = 0;
+  static final int TRAIL_EDGE = 1;
+  static final int TRAIL_PARENT = 2;
+  static final int TRAIL_SIZE = 3;
+  static final int TRAIL_OPEN = 4;
+  static final int TRAIL_EXITS = 5;
+  // for every set of allowed masks, the wires all of them have and the wires any of them has
+  static final byte[] MUST = new byte[1 << 16];
+  static final byte[] MAY = new byte[1 << 16];
+
+  static {
+    for (int options = 1; options < (1 << 16); options++) {
+      int must = 0xF;
+      int may = 0;
+      for (int mask = 0; mask < 16; mask++) {
+        if ((options & (1 << mask)) != 0) {
+          must &= mask;
+          may |= mask;
+        }
+      }
+      MUST[options] = (byte) must;
+      MAY[options] = (byte) may;
+    }
+  }
+
+  // the board being solved, and its number of tiles
+  BoardStore store;
+  int size;
+  // whether the board is a region of a bigger board with more rows above or below it,
+  // whose edges across the region's border are left free and never decided
+  boolean openAbove;
+  boolean openBelow;
+  // the option to try first when deciding each tile, or null to try the lowest first
+  int[] hints;
+  // the tiles whose hint is tried first without probing their other options, leaving a
+  // wrong hint to backtracking, or null to probe every tile; and the search nodes after
+  // which deciding gives up, or 0 for no limit
+  boolean[] trusted;
+  long nodeLimit;
+  // the set of masks each tile may still take, one bit per mask
+  int[] options;
+  // the state of every edge, indexed by the store's edge ids
+  byte[] edges;
+  // the components joined by the edges that are on, as a disjoint-set without path
+  // compression so that a union can be undone, with the size of each component, the
+  // number of its tiles' edges that are still unknown and the xor of their ids, which is
+  // the id of its only way out when just one is left
+  int[] parent;
+  int[] componentSize;
+  int[] open;
+  int[] exits;
+  // the number of edges that are on
+  int onEdges;
+  // the tiles whose options changed and must be propagated to their edges
+  int[] work;
+  int workCount;
+  boolean[] queued;
+  // the edges that must be on, because they are the only way out of a component
+  int[] forced;
+  int forcedCount;
+  // the first tile that may still hold a choice in row-major order
+  int cursor;
+  // the last tile found with no option left to try, decided first after backing up so
+  // the search quickly finds the decision that caused it, or -1 if there is none
+  int lastConflict;
+  // the changes made since the first decision, packed as kind, index and old value
+  long[] trail;
+  int trailCount;
+  // the decisions being tried: the tile, its options left to try, the trail size
+  // and the cursor when it was made
+  int[] decisionTile;
+  int[] decisionLeft;
+  int[] decisionMark;
+  int[] decisionCursor;
+  int depth;
+  // the number of search nodes tried, and the time the last solve took
+  long searchNodes;
+  long nanos;
+  // the number of passes over every tile dropping the options that fail on their own, and
+  // the number of decisions made with more than one option left to try
+  int rounds;
+  long decisions;
+
+  BoardSolver(BoardStore store) {
+    this(store, false, false);
+  }
+
+  // Solve the given region of a bigger board, with more rows above or below it as given
+  BoardSolver(BoardStore store, boolean openAbove, boolean openBelow) {
+    this.store = store;
+    this.size = store.size();
+    this.openAbove = openAbove;
+    this.openBelow = openBelow;
+    this.options = new int[this.size];
+    this.edges = new byte[this.size * 2];
+    this.parent = new int[this.size];
+    this.componentSize = new int[this.size];
+    this.open = new int[this.size];
+    this.exits = new int[this.size];
+    this.work = new int[this.size];
+    this.forced = new int[16];
+    this.queued = new boolean[this.size];
+    this.trail = new long[64];
+    this.decisionTile = new int[16];
+    this.decisionLeft = new int[16];
+    this.decisionMark = new int[16];
+    this.decisionCursor = new int[16];
+  }
+
+  // Get the set of masks the given mask can be rotated into, one bit per mask
+  static int rotations(int mask) {
+    int result = 0;
+    for (int turn = 0; turn < 4; turn++) {
+      result |= 1 << mask;
+      mask = ((mask << 1) | (mask >>> 3)) & 0xF;
+    }
+    return result;
+  }
+
+  // Get the set of masks that have, or do not have, the given wire
+  static int withWire(int wire, boolean has) {
+    int result = 0;
+    for (int mask = 0; mask < 16; mask++) {
+      if (((mask & wire) != 0) == has) {
+        result |= 1 << mask;
+      }
+    }
+    return result;
+  }
+
+  // Find rotations of every tile that make the board a spanning tree, and tell if there
+  // are any
+  // EFFECT: change the options of every tile to the one mask of the solution found,
+  // and the search node count and time of this solver
+  boolean solve() {
+    long start = System.nanoTime();
+    boolean solved = this.search();
+    this.nanos = System.nanoTime() - start;
+    return solved;
+  }
+
+  // Start from the current wires of the board, then propagate and backtrack until every
+  // tile has one option left that makes a spanning tree, and tell if that happened
+  // EFFECT: change the state of this solver
+  boolean search() {
+    this.reset();
+    return this.propagate() && this.settle() && this.decide();
+  }
+
+  // Decide every tile that still has a choice, backtracking until every tile has one
+  // option left that makes a spanning tree, or a forest for a region, and tell if that
+  // happened
+  // EFFECT: change the state of this solver
+  boolean decide() {
+    while (true) {
+      int choice = this.nextChoice();
+      if (choice == -1 && (this.openAbove || this.openBelow || this.onEdges == this.size - 1)) {
+        return true;
+      }
+      if (this.nodeLimit > 0 && this.searchNodes > this.nodeLimit) {
+        return false;
+      }
+      // Only branch over the options that survive propagation on their own, unless the
+      // hint of the tile is trusted
+      int viable = 0;
+      if (choice != -1 && this.trusted != null && this.trusted[choice]
+              && (this.options[choice] & this.hints[choice]) != 0) {
+        viable = this.options[choice];
+      }
+      else if (choice != -1) {
+        viable = this.probe(choice);
+        if (viable == 0) {
+          this.lastConflict = choice;
+        }
+      }
+      if (Integer.bitCount(viable) == 1) {
+        if (this.restrict(choice, viable) && this.propagate()) {
+          continue;
+        }
+      }
+      else if (viable != 0) {
+        this.pushDecision(choice);
+        this.decisionLeft[this.depth - 1] = viable;
+      }
+
+      // Try the next option of the latest decision, backing up past exhausted ones
+      boolean consistent = false;
+      while (!consistent && this.depth > 0
+              && (this.nodeLimit == 0 || this.searchNodes <= this.nodeLimit)) {
+        int top = this.depth - 1;
+        int left = this.decisionLeft[top];
+        this.undo(this.decisionMark[top]);
+        if (left == 0) {
+          this.depth--;
+        }
+        else {
+          int option = this.firstOption(this.decisionTile[top], left);
+          this.decisionLeft[top] = left & ~option;
+          this.cursor = this.decisionCursor[top];
+          this.searchNodes++;
+          consistent = this.restrict(this.decisionTile[top], option) && this.propagate();
+        }
+      }
+      if (!consistent) {
+        return false;
+      }
+    }
+  }
+
+  // Get the option to try first out of the given options of the given tile: its hint if
+  // that is one of them, or else the lowest
+  int firstOption(int tile, int left) {
+    if (this.hints != null && (left & this.hints[tile]) != 0) {
+      return left & this.hints[tile];
+    }
+    return Integer.lowestOneBit(left);
+  }
+
+  // Drop every option of every tile that fails when propagated on its own, until no more
+  // can be dropped, and tell if the board is still consistent
+  // EFFECT: change the options, edges and components of this solver
+  boolean settle() {
+    boolean dropped = true;
+    while (dropped) {
+      dropped = false;
+      this.rounds++;
+      for (int tile = 0; tile < this.size; tile++) {
+        int current = this.options[tile];
+        if (Integer.bitCount(current) > 1) {
+          int viable = this.probe(tile);
+          if (viable != current) {
+            dropped = true;
+            if (!this.restrict(tile, viable) || !this.propagate()) {
+              return false;
+            }
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  // Get the options of the given tile that do not fail when propagated on their own
+  // EFFECT: count every option tried as a search node
+  int probe(int tile) {
+    int viable = 0;
+    for (int left = this.options[tile]; left != 0; left &= left - 1) {
+      int option = Integer.lowestOneBit(left);
+      int mark = this.trailCount;
+      // Try the option as a decision of its own, so that its changes are recorded
+      this.depth++;
+      this.searchNodes++;
+      if (this.restrict(tile, option) && this.propagate()) {
+        viable |= option;
+      }
+      this.undo(mark);
+      this.depth--;
+    }
+    return viable;
+  }
+
+  // Set up every tile with the rotations of its current wires that keep it on the board,
+  // or lead out of the region, and every edge as unknown
+  // EFFECT: change the state of this solver
+  void reset() {
+    BoardStore store = this.store;
+    Arrays.fill(this.edges, UNKNOWN);
+    this.searchNodes = 1;
+    this.rounds = 0;
+    this.decisions = 0;
+    this.onEdges = 0;
+    this.trailCount = 0;
+    this.depth = 0;
+    this.workCount = 0;
+    this.forcedCount = 0;
+    this.cursor = 0;
+    this.lastConflict = -1;
+    for (int tile = 0; tile < this.size; tile++) {
+      int allowed = rotations(store.wires(tile));
+      int open = 0;
+      int exits = 0;
+      for (int wire = BoardStore.LEFT; wire <= BoardStore.BOTTOM; wire <<= 1) {
+        if (store.neighbor(tile, wire) == -1) {
+          // A free edge out of the region keeps its component open for good, counting as
+          // two ways out so that it never leaves a single one to force
+          if ((wire == BoardStore.TOP && this.openAbove)
+                  || (wire == BoardStore.BOTTOM && this.openBelow)) {
+            open += 2;
+          }
+          else {
+            allowed &= withWire(wire, false);
+          }
+        }
+        else {
+          open++;
+          exits ^= store.edgeToward(tile, wire);
+        }
+      }
+      this.options[tile] = allowed;
+      this.parent[tile] = tile;
+      this.componentSize[tile] = 1;
+      this.open[tile] = open;
+      this.exits[tile] = exits;
+      this.queued[tile] = true;
+      this.work[this.workCount] = tile;
+      this.workCount++;
+    }
+  }
+
+  // Propagate the options of every queued tile to its edges and neighbors until nothing
+  // changes, and tell if the board is still consistent
+  // EFFECT: change the options, edges and components of this solver, and empty the work
+  boolean propagate() {
+    BoardStore store = this.store;
+    while (this.workCount > 0 || this.forcedCount > 0) {
+      if (this.forcedCount > 0) {
+        this.forcedCount--;
+        int edge = this.forced[this.forcedCount];
+        if (this.edges[edge] == UNKNOWN) {
+          int from = store.edgeFrom(edge);
+          int wire = BoardStore.BOTTOM;
+          if ((edge & 1) == 0) {
+            wire = BoardStore.RIGHT;
+          }
+          if (!this.setEdge(edge, from, wire, store.edgeTo(edge), ON)) {
+            return this.fail();
+          }
+        }
+        continue;
+      }
+      this.workCount--;
+      int tile = this.work[this.workCount];
+      this.queued[tile] = false;
+      if (this.options[tile] == 0) {
+        return this.fail();
+      }
+      for (int wire = BoardStore.LEFT; wire <= BoardStore.BOTTOM; wire <<= 1) {
+        int other = store.neighbor(tile, wire);
+        if (other != -1) {
+          int edge = store.edgeToward(tile, wire);
+          if (this.edges[edge] == UNKNOWN) {
+            int opts = this.options[tile];
+            byte state = UNKNOWN;
+            if ((MUST[opts] & wire) != 0) {
+              state = ON;
+            }
+            // An edge inside one component would close a loop
+            else if ((MAY[opts] & wire) == 0 || this.find(tile) == this.find(other)) {
+              state = OFF;
+            }
+            if (state != UNKNOWN && !this.setEdge(edge, tile, wire, other, state)) {
+              return this.fail();
+            }
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  // Empty the work after a contradiction, and tell that the board is inconsistent
+  // EFFECT: empty the work of this solver
+  boolean fail() {
+    this.forcedCount = 0;
+    while (this.workCount > 0) {
+      this.workCount--;
+      this.queued[this.work[this.workCount]] = false;
+    }
+    return false;
+  }
+
+  // Set the given unknown edge between the given tile and its neighbor in the direction of
+  // the given wire, and tell if that keeps the board consistent
+  // EFFECT: change the edge, the components and the options of both tiles
+  boolean setEdge(int edge, int tile, int wire, int other, byte state) {
+    this.record(TRAIL_EDGE, edge, this.edges[edge]);
+    this.edges[edge] = state;
+    if (state == ON) {
+      this.onEdges++;
+    }
+    int rootA = this.find(tile);
+    int rootB = this.find(other);
+    this.setExits(rootA, this.open[rootA] - 1, this.exits[rootA] ^ edge);
+    this.setExits(rootB, this.open[rootB] - 1, this.exits[rootB] ^ edge);
+    if (state == ON) {
+      if (rootA == rootB) {
+        return false;
+      }
+      // Attach the smaller component under the bigger one
+      if (this.componentSize[rootA] < this.componentSize[rootB]) {
+        int swap = rootA;
+        rootA = rootB;
+        rootB = swap;
+      }
+      this.record(TRAIL_PARENT, rootB, this.parent[rootB]);
+      this.parent[rootB] = rootA;
+      this.record(TRAIL_SIZE, rootA, this.componentSize[rootA]);
+      this.componentSize[rootA] += this.componentSize[rootB];
+      this.setExits(rootA, this.open[rootA] + this.open[rootB],
+              this.exits[rootA] ^ this.exits[rootB]);
+    }
+    if (!this.checkExits(rootA)
+            || (this.parent[rootB] == rootB && !this.checkExits(rootB))) {
+      return false;
+    }
+    boolean on = state == ON;
+    return this.restrict(tile, withWire(wire, on))
+            && this.restrict(other, withWire(BoardStore.opposite(wire), on));
+  }
+
+  // Keep only the options of the given tile that are in the given set, and tell if
+  // any are left
+  // EFFECT: change the options of the tile, queueing it if they changed
+  boolean restrict(int tile, int allowed) {
+    int current = this.options[tile];
+    int next = current & allowed;
+    if (next == current) {
+      return true;
+    }
+    if (next == 0) {
+      return false;
+    }
+    this.record(TRAIL_OPTIONS, tile, current);
+    this.options[tile] = next;
+    if (!this.queued[tile]) {
+      this.queued[tile] = true;
+      this.work[this.workCount] = tile;
+      this.workCount++;
+    }
+    return true;
+  }
+
+  // Get the tile to decide next: the last conflict if it still has a choice, or else the
+  // first tile that does in row-major order, so that neighboring tiles are decided close
+  // together, or -1 if every tile is decided
+  // EFFECT: forget the last conflict once it is decided, and move the cursor past
+  // the decided tiles
+  int nextChoice() {
+    if (this.lastConflict != -1) {
+      if (Integer.bitCount(this.options[this.lastConflict]) > 1) {
+        return this.lastConflict;
+      }
+      this.lastConflict = -1;
+    }
+    while (this.cursor < this.size && Integer.bitCount(this.options[this.cursor]) == 1) {
+      this.cursor++;
+    }
+    if (this.cursor == this.size) {
+      return -1;
+    }
+    return this.cursor;
+  }
+
+  // Get the root of the component of the given tile
+  int find(int tile) {
+    while (this.parent[tile] != tile) {
+      tile = this.parent[tile];
+    }
+    return tile;
+  }
+
+  // Set the number of unknown edges of the component with the given root, and the xor
+  // of their ids
+  // EFFECT: change the open count and exits of the root
+  void setExits(int root, int count, int exits) {
+    this.record(TRAIL_OPEN, root, this.open[root]);
+    this.record(TRAIL_EXITS, root, this.exits[root]);
+    this.open[root] = count;
+    this.exits[root] = exits;
+  }
+
+  // Check that the component with the given root can still join the rest of the board
+  // EFFECT: force its only way out to be on, if it has just one left
+  boolean checkExits(int root) {
+    if (this.componentSize[root] == this.size) {
+      return true;
+    }
+    if (this.open[root] == 0) {
+      return false;
+    }
+    if (this.open[root] == 1) {
+      if (this.forcedCount == this.forced.length) {
+        this.forced = Arrays.copyOf(this.forced, this.forced.length * 2);
+      }
+      this.forced[this.forcedCount] = this.exits[root];
+      this.forcedCount++;
+    }
+    return true;
+  }
+
+  // Record the old value of the given kind of state at the given index, if a decision
+  // is being tried
+  // EFFECT: change the trail, growing it if it is full
+  void record(int kind, int index, int old) {
+    if (this.depth == 0) {
+      return;
+    }
+    if (this.trailCount == this.trail.length) {
+      this.trail = Arrays.copyOf(this.trail, this.trail.length * 2);
+    }
+    this.trail[this.trailCount] = ((long) kind << 60) | ((long) index << 28) | old;
+    this.trailCount++;
+  }
+
+  // Undo every change recorded after the given trail size
+  // EFFECT: change the state of this solver back to what it was at that size
+  void undo(int mark) {
+    while (this.trailCount > mark) {
+      this.trailCount--;
+      long entry = this.trail[this.trailCount];
+      int kind = (int) (entry >>> 60);
+      int index = (int) ((entry >>> 28) & 0xFFFFFFFL);
+      int old = (int) (entry & 0xFFFFFFFL);
+      if (kind == TRAIL_OPTIONS) {
+        this.options[index] = old;
+      }
+      else if (kind == TRAIL_EDGE) {
+        if (this.edges[index] == ON) {
+          this.onEdges--;
+        }
+        this.edges[index] = (byte) old;
+      }
+      else if (kind == TRAIL_PARENT) {
+        this.parent[index] = old;
+      }
+      else if (kind == TRAIL_SIZE) {
+        this.componentSize[index] = old;
+      }
+      else if (kind == TRAIL_OPEN) {
+        this.open[index] = old;
+      }
+      else {
+        this.exits[index] = old;
+      }
+    }
+  }
+
+  // Start trying the options of the given tile
+  // EFFECT: push a decision, growing the decision stack if it is full
+  void pushDecision(int tile) {
+    if (this.depth == this.decisionTile.length) {
+      int bigger = this.depth * 2;
+      this.decisionTile = Arrays.copyOf(this.decisionTile, bigger);
+      this.decisionLeft = Arrays.copyOf(this.decisionLeft, bigger);
+      this.decisionMark = Arrays.copyOf(this.decisionMark, bigger);
+      this.decisionCursor = Arrays.copyOf(this.decisionCursor, bigger);
+    }
+    this.decisionTile[this.depth] = tile;
+    this.decisionLeft[this.depth] = this.options[tile];
+    this.decisionMark[this.depth] = this.trailCount;
+    this.decisionCursor[this.depth] = this.cursor;
+    this.depth++;
+    this.decisions++;
+  }
+
+  // Get the mask the given tile has in the solution found
+  int solution(int tile) {
+    return Integer.numberOfTrailingZeros(this.options[tile]);
+  }
+
+  // Get the number of clockwise turns that take the given tile of the board to its mask
+  // in the solution found
+  int turns(int tile) {
+    int mask = this.store.wires(tile);
+    int turns = 0;
+    while (mask != this.solution(tile)) {
+      mask = ((mask << 1) | (mask >>> 3)) & 0xF;
+      turns++;
+    }
+    return turns;
+  }
+
+  // Turn every tile of the board to its mask in the solution found
+  // EFFECT: change the wires of the board
+  void apply() {
+    for (int tile = 0; tile < this.size; tile++) {
+      for (int turn = this.turns(tile); turn > 0; turn--) {
+        this.store.rotate(tile);
+      }
+    }
+  }
+
+  // Describe the size, time and search node count of the last solve
+  String report() {
+    return "solved " + this.size + " tiles in " + (this.nanos / 1000000) + " ms, "
+            + this.searchNodes + " search nodes";
+  }
+}
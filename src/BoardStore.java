@@ -0,0 +1,296 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Represents the compact storage of every tile on a board: the wires of each tile
+// as a 4-bit mask, the powered tiles as a bitset and the distances as an int array
+class BoardStore {
+  // the bit of each wire direction in a tile's wire mask
+  static final int LEFT = 1;
+  static final int TOP = 2;
+  static final int RIGHT = 4;
+  static final int BOTTOM = 8;
+  // the bit marking the power station, kept above the four wire bits
+  static final int STATION = 16;
+  // the wire mask facing the opposite way of every wire mask
+  static final byte[] OPPOSITE = new byte[16];
+  // the name of each wire direction, by the position of its bit
+  static final String[] DIRECTIONS = new String[] {"left", "top", "right", "bottom"};
+
+  static {
+    for (int mask = 0; mask < 16; mask++) {
+      OPPOSITE[mask] = (byte) (((mask << 2) | (mask >>> 2)) & 0xF);
+    }
+  }
+
+  // the width and height of the board
+  int width;
+  int height;
+  // the wire mask and power station bit of each tile, indexed by row * width + col
+  byte[] tiles;
+  // the tiles that are currently powered, and how many of them there are
+  BitSet powered;
+  int poweredCount;
+  // the distance of each tile from the power station, or -1 if it is not reached
+  int[] distances;
+  // the tiles whose wires, station, power or distance changed since they were last drawn
+  BitSet changed;
+  // the wire bits of each tile that lead to a neighbor on the board, and the difference
+  // in index from a tile to its neighbor in the direction of each wire bit
+  byte[] sides;
+  int[] offsets;
+
+  BoardStore(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.tiles = new byte[width * height];
+    this.powered = new BitSet(width * height);
+    this.distances = new int[width * height];
+    this.changed = new BitSet(width * height);
+
+    this.offsets = new int[BOTTOM + 1];
+    this.offsets[LEFT] = -1;
+    this.offsets[RIGHT] = 1;
+    this.offsets[TOP] = -width;
+    this.offsets[BOTTOM] = width;
+    this.sides = new byte[width * height];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        int sides = 0;
+        if (col > 0) {
+          sides |= LEFT;
+        }
+        if (col < width - 1) {
+          sides |= RIGHT;
+        }
+        if (row > 0) {
+          sides |= TOP;
+        }
+        if (row < height - 1) {
+          sides |= BOTTOM;
+        }
+        this.sides[this.index(row, col)] = (byte) sides;
+      }
+    }
+  }
+
+  // Get the number of tiles in this board
+  int size() {
+    return this.tiles.length;
+  }
+
+  // Get the index of the tile at the given row and column
+  int index(int row, int col) {
+    return row * this.width + col;
+  }
+
+  // Get the wire mask of the tile at the given index
+  int wires(int index) {
+    return this.tiles[index] & 0xF;
+  }
+
+  // Check if the tile at the given index has all the given wire bits
+  boolean hasWire(int index, int wire) {
+    return wire != 0 && (this.tiles[index] & wire) == wire;
+  }
+
+  // Set the wire mask of the tile at the given index
+  // EFFECT: change the low four bits of the tile, keeping its power station bit
+  void setWires(int index, int mask) {
+    this.tiles[index] = (byte) ((this.tiles[index] & STATION) | (mask & 0xF));
+    this.changed.set(index);
+  }
+
+  // Add the given wire bits to the tile at the given index
+  // EFFECT: change the wire mask of the tile
+  void addWire(int index, int wire) {
+    this.tiles[index] = (byte) (this.tiles[index] | (wire & 0xF));
+    this.changed.set(index);
+  }
+
+  // Rotate the wires of the tile at the given index clockwise, so that
+  // left goes to top, top to right, right to bottom and bottom to left
+  // EFFECT: change the wire mask of the tile
+  void rotate(int index) {
+    int mask = this.wires(index);
+    this.setWires(index, (mask << 1) | (mask >>> 3));
+  }
+
+  // Get the index of the tile next to the given one in the direction of the given
+  // wire bit, or -1 if that would be off the board
+  int neighbor(int index, int wire) {
+    if ((this.sides[index] & wire) == 0) {
+      return -1;
+    }
+    return index + this.offsets[wire];
+  }
+
+  // Check if the tile at the given index and its neighbor in the direction
+  // of the given wire bit both have a wire towards each other
+  boolean connected(int index, int wire) {
+    return (this.tiles[index] & this.sides[index] & wire) != 0
+            && (this.tiles[index + this.offsets[wire]] & OPPOSITE[wire]) != 0;
+  }
+
+  // Get the wire bits of the tile at the given index that are connected to a neighbor,
+  // so a traversal can step through them without looking at the others
+  int links(int index) {
+    int tile = this.tiles[index];
+    int links = 0;
+    for (int wires = tile & this.sides[index] & 0xF; wires != 0; wires &= wires - 1) {
+      int wire = wires & -wires;
+      if ((this.tiles[index + this.offsets[wire]] & OPPOSITE[wire]) != 0) {
+        links |= wire;
+      }
+    }
+    return links;
+  }
+
+  // Get the id of the edge between the tile at the given index and the one to its right
+  int rightEdge(int index) {
+    return index * 2;
+  }
+
+  // Get the id of the edge between the tile at the given index and the one below it
+  int bottomEdge(int index) {
+    return index * 2 + 1;
+  }
+
+  // Get the id of the edge between the tile at the given index and its neighbor
+  // in the direction of the given wire bit
+  int edgeToward(int index, int wire) {
+    if (wire == LEFT) {
+      return this.rightEdge(index - 1);
+    }
+    if (wire == RIGHT) {
+      return this.rightEdge(index);
+    }
+    if (wire == TOP) {
+      return this.bottomEdge(index - this.width);
+    }
+    return this.bottomEdge(index);
+  }
+
+  // Get the index of the left or top tile of the given edge
+  int edgeFrom(int edge) {
+    return edge >>> 1;
+  }
+
+  // Get the index of the right or bottom tile of the given edge
+  int edgeTo(int edge) {
+    if ((edge & 1) == 0) {
+      return (edge >>> 1) + 1;
+    }
+    return (edge >>> 1) + this.width;
+  }
+
+  // Connect the two tiles of the given edge with wires towards each other
+  // EFFECT: change the wire masks of both tiles
+  void connectEdge(int edge) {
+    if ((edge & 1) == 0) {
+      this.addWire(this.edgeFrom(edge), RIGHT);
+      this.addWire(this.edgeTo(edge), LEFT);
+    }
+    else {
+      this.addWire(this.edgeFrom(edge), BOTTOM);
+      this.addWire(this.edgeTo(edge), TOP);
+    }
+  }
+
+  // Check if the power station is on the tile at the given index
+  boolean isStation(int index) {
+    return (this.tiles[index] & STATION) != 0;
+  }
+
+  // Set whether the power station is on the tile at the given index
+  // EFFECT: change the power station bit of the tile, marking it as changed if it differs
+  void setStation(int index, boolean state) {
+    if (this.isStation(index) != state) {
+      this.tiles[index] = (byte) (this.tiles[index] ^ STATION);
+      this.changed.set(index);
+    }
+  }
+
+  // Check if the tile at the given index is powered
+  boolean isPowered(int index) {
+    return this.powered.get(index);
+  }
+
+  // Set the power state of the tile at the given index
+  // EFFECT: change the powered bit of the tile, counting it and marking it as changed if
+  // it differs
+  void setPowered(int index, boolean state) {
+    if (this.powered.get(index) != state) {
+      this.powered.set(index, state);
+      if (state) {
+        this.poweredCount++;
+      }
+      else {
+        this.poweredCount--;
+      }
+      this.changed.set(index);
+    }
+  }
+
+  // Unpower every tile on this board
+  // EFFECT: clear the powered bitset, marking the tiles that were powered as changed
+  void clearPowered() {
+    this.changed.or(this.powered);
+    this.powered.clear();
+    this.poweredCount = 0;
+  }
+
+  // Mark every tile on this board as not reached from the power station
+  // EFFECT: set every distance to -1, marking the tiles that were reached as changed
+  void clearDistances() {
+    for (int index = 0; index < this.distances.length; index++) {
+      if (this.distances[index] != -1) {
+        this.distances[index] = -1;
+        this.changed.set(index);
+      }
+    }
+  }
+
+  // Get the distance from the power station of the tile at the given index
+  int distance(int index) {
+    return this.distances[index];
+  }
+
+  // Set the distance from the power station of the tile at the given index
+  // EFFECT: change the distance of the tile, marking it as changed if it differs
+  void setDistance(int index, int distance) {
+    if (this.distances[index] != distance) {
+      this.distances[index] = distance;
+      this.changed.set(index);
+    }
+  }
+
+  // Get the wire bit facing the opposite way of the given wire bit
+  static int opposite(int wire) {
+    return OPPOSITE[wire];
+  }
+
+  // Get the wire bit of the given direction, or 0 if it is not a direction
+  static int wireOf(String direction) {
+    if (direction.equals("left")) {
+      return LEFT;
+    }
+    if (direction.equals("right")) {
+      return RIGHT;
+    }
+    if (direction.equals("top")) {
+      return TOP;
+    }
+    if (direction.equals("bottom")) {
+      return BOTTOM;
+    }
+    return 0;
+  }
+
+  // Get the direction of the given wire bit, or null if it is not a single wire bit
+  static String directionOf(int wire) {
+    if (wire == 0 || (wire & (wire - 1)) != 0 || wire > BOTTOM) {
+      return null;
+    }
+    return DIRECTIONS[Integer.numberOfTrailingZeros(wire)];
+  }
+}
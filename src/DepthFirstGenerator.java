@@ -0,0 +1,50 @@
+import java.util.Random;
+
+// Generates a spanning tree with an iterative randomized depth-first search,
+// which gives long winding corridors and so a large diameter
+class DepthFirstGenerator implements SpanningTreeGenerator {
+
+  // Generate the tree of a randomized depth-first search from a random tile
+  public long[] generate(BoardStore store, Random rand) {
+    int size = store.size();
+    long[] tree = new long[Math.max(0, size - 1)];
+    int count = 0;
+    int[] stack = new int[size];
+    boolean[] visited = new boolean[size];
+    int[] choices = new int[4];
+
+    int start = rand.nextInt(size);
+    visited[start] = true;
+    stack[0] = start;
+    int depth = 1;
+
+    while (depth > 0) {
+      int current = stack[depth - 1];
+
+      // Collect the directions towards unvisited neighbors
+      int options = 0;
+      for (int wire = BoardStore.LEFT; wire <= BoardStore.BOTTOM; wire <<= 1) {
+        int other = store.neighbor(current, wire);
+        if (other != -1 && !visited[other]) {
+          choices[options] = wire;
+          options++;
+        }
+      }
+
+      // Backtrack from a dead end, or carve towards a random unvisited neighbor
+      if (options == 0) {
+        depth--;
+      }
+      else {
+        int wire = choices[rand.nextInt(options)];
+        int other = store.neighbor(current, wire);
+        visited[other] = true;
+        tree[count] = Edge.pack(0, store.edgeToward(current, wire));
+        count++;
+        stack[depth] = other;
+        depth++;
+      }
+    }
+    return tree;
+  }
+}
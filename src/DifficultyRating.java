@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// Represents how hard a scrambled board is, rated from the effort of solving it rather than
+// from its size: the rounds of propagation it takes, the tiles forced without guessing and
+// the guesses left after them, how far the scramble is from the solution in turns, and how
+// far the power station has to move along the solution before its radius lights every tile.
+// The signals add up to a score from 0 to 100, cut into tiers
+class DifficultyRating {
+  static final String[] TIERS = {"easy", "medium", "hard", "expert"};
+  // the lowest score of every tier after the first
+  static final double[] TIER_SCORES = {20, 35, 50};
+  // the most points each signal adds to the score
+  static final double OPEN_POINTS = 35;
+  static final double GUESS_POINTS = 25;
+  static final double ROUND_POINTS = 15;
+  static final double TURN_POINTS = 15;
+  static final double TRAVEL_POINTS = 10;
+  // the number of puzzles of a pack one task rates
+  static final int STRIPE = 64;
+
+  // the number of tiles of the board, and whether it has a solution at all
+  int tiles;
+  boolean solvable;
+  // the passes dropping options that fail on their own, the tiles left with one option by
+  // propagation alone before any pass, the decisions made with a choice left, and the
+  // search nodes tried
+  int rounds;
+  int forced;
+  long guesses;
+  long searchNodes;
+  // the clockwise turns from the scramble to the solution, over every tile
+  int turns;
+  // the diameter of the solution, the radius of the power station, and the fewest moves
+  // of the station along the solution to a tile from which it lights every tile
+  int diameter;
+  int radius;
+  int travel;
+  double score;
+  // the index of the tier of the score, or -1 if the board has no solution
+  int tier;
+
+  // Rate the given board, whose power station is on the given tile and lights the given
+  // radius, without changing it
+  static DifficultyRating rate(BoardStore store, int radius, int station) {
+    return rate(new BoardSolver(store), radius, station);
+  }
+
+  // Rate the board of the given solver, whose power station is on the given tile and
+  // lights the given radius
+  // EFFECT: change the state of the solver to the solution found
+  static DifficultyRating rate(BoardSolver solver, int radius, int station) {
+    DifficultyRating rating = new DifficultyRating();
+    rating.tiles = solver.size;
+    rating.radius = radius;
+    solver.reset();
+    // Count the tiles propagation alone deduces, before any option is tried on its own,
+    // then search the same way the solver does
+    boolean consistent = solver.propagate();
+    if (consistent) {
+      for (int tile = 0; tile < solver.size; tile++) {
+        if (Integer.bitCount(solver.options[tile]) == 1) {
+          rating.forced++;
+        }
+      }
+    }
+    rating.solvable = consistent && solver.settle() && solver.decide();
+    rating.rounds = solver.rounds;
+    rating.guesses = solver.decisions;
+    rating.searchNodes = solver.searchNodes;
+    rating.tier = -1;
+    if (rating.solvable) {
+      for (int tile = 0; tile < solver.size; tile++) {
+        rating.turns += solver.turns(tile);
+      }
+      // Every move toward the middle of the solution brings the farthest tile one closer
+      int[] distances = new int[solver.size];
+      int[] queue = new int[solver.size];
+      int end = farthest(solver, station, distances, queue);
+      rating.travel = Math.max(0, distances[end] - radius);
+      rating.diameter = distances[farthest(solver, end, distances, queue)];
+      rating.score = rating.score();
+      rating.tier = tier(rating.score);
+    }
+    return rating;
+  }
+
+  // Get the farthest tile from the given one along the wires of the solution found by the
+  // given solver
+  // EFFECT: change the distances to the distance of every tile from the given one
+  static int farthest(BoardSolver solver, int start, int[] distances, int[] queue) {
+    BoardStore store = solver.store;
+    Arrays.fill(distances, -1);
+    distances[start] = 0;
+    queue[0] = start;
+    int count = 1;
+    int tile = start;
+    for (int head = 0; head < count; head++) {
+      tile = queue[head];
+      int mask = solver.solution(tile);
+      for (int wire = BoardStore.LEFT; wire <= BoardStore.BOTTOM; wire <<= 1) {
+        int other = store.neighbor(tile, wire);
+        if ((mask & wire) != 0 && other != -1 && distances[other] == -1) {
+          distances[other] = distances[tile] + 1;
+          queue[count] = other;
+          count++;
+        }
+      }
+    }
+    // The last tile found is one of the farthest
+    return tile;
+  }
+
+  // Add up the points of every signal of this rating, from 0 to 100
+  double score() {
+    double open = (this.tiles - this.forced) / (double) this.tiles;
+    // 1023 guesses or more are as hard as it gets
+    double guesses = Math.min(1, Math.log(1 + this.guesses) / Math.log(1024));
+    // The last round drops nothing, and 8 more are as hard as it gets
+    double rounds = Math.min(1, Math.max(0, this.rounds - 1) / 8.0);
+    // A scramble turns every tile 1.5 times on average
+    double turns = Math.min(1, this.turns / (1.5 * this.tiles));
+    // A station at an end of the diameter has the farthest to go
+    double travel = Math.min(1, this.travel / (double) Math.max(1, this.diameter - this.radius));
+    return OPEN_POINTS * open + GUESS_POINTS * guesses + ROUND_POINTS * rounds
+            + TURN_POINTS * turns + TRAVEL_POINTS * travel;
+  }
+
+  // Get the index of the tier of the given score
+  static int tier(double score) {
+    int tier = 0;
+    while (tier < TIER_SCORES.length && score >= TIER_SCORES[tier]) {
+      tier++;
+    }
+    return tier;
+  }
+
+  // Get the name of the tier of this rating
+  String tierName() {
+    if (this.tier == -1) {
+      return "unsolvable";
+    }
+    return TIERS[this.tier];
+  }
+
+  // Rate every puzzle of the given pack on the given pool, in the order of their ids
+  static DifficultyRating[] ratePack(PuzzlePack pack, ForkJoinPool pool) throws IOException {
+    DifficultyRating[] ratings = new DifficultyRating[pack.count];
+    int stripes = (pack.count + STRIPE - 1) / STRIPE;
+    try {
+      pool.invoke(new StripeTask(0, stripes, stripe -> {
+        for (int id = stripe * STRIPE; id < Math.min(pack.count, (stripe + 1) * STRIPE); id++) {
+          try {
+            LightEngine engine = pack.load(id);
+            ratings[id] = rate(engine.store, engine.radius, engine.station());
+          }
+          catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      }));
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return ratings;
+  }
+
+  // Count the ratings in every tier, with the unsolvable ones last
+  static int[] tierCounts(DifficultyRating[] ratings) {
+    int[] counts = new int[TIERS.length + 1];
+    for (DifficultyRating rating : ratings) {
+      if (rating.tier == -1) {
+        counts[TIERS.length]++;
+      }
+      else {
+        counts[rating.tier]++;
+      }
+    }
+    return counts;
+  }
+
+  // Rate every puzzle of a pack from the command line, and count them in every tier:
+  //   DifficultyRating <pack file> [threads]
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.out.println("usage: DifficultyRating <pack file> [threads]");
+      return;
+    }
+    int threads = args.length > 1 ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+    PuzzlePack pack = PuzzlePack.open(Paths.get(args[0]));
+    long start = System.nanoTime();
+    DifficultyRating[] ratings;
+    try {
+      ratings = ratePack(pack, StripeTask.pool(threads));
+    }
+    finally {
+      pack.close();
+    }
+    long nanos = Math.max(1, System.nanoTime() - start);
+    int[] counts = tierCounts(ratings);
+    StringBuilder report = new StringBuilder("rated " + ratings.length + " puzzles in "
+            + (nanos / 1000000) + " ms: " + (long) (ratings.length / (nanos / 1e9))
+            + " puzzles/s");
+    for (int tier = 0; tier < TIERS.length; tier++) {
+      report.append(", ").append(TIERS[tier]).append(' ').append(counts[tier]);
+    }
+    report.append(", unsolvable ").append(counts[TIERS.length]);
+    System.out.println(report);
+  }
+
+  // Describe the score, tier and signals of this rating
+  String report() {
+    return this.tierName() + " (" + Math.round(this.score) + "): " + this.forced + " of "
+            + this.tiles + " tiles forced, " + this.guesses + " guesses, " + this.rounds
+            + " rounds, " + this.turns + " turns, diameter " + this.diameter + " with radius "
+            + this.radius + ", " + this.travel + " station moves to light every tile";
+  }
+}
@@ -1,4 +1,6 @@
 // Represents a connection between two GamePieces with a weight value
+// Boards keep their edges packed in a long, with the weight in the high 32 bits
+// and the edge id of the BoardStore in the low 32 bits
 class Edge implements Comparable<Edge> {
   GamePiece from;
   GamePiece to;
@@ -14,4 +16,19 @@ class Edge implements Comparable<Edge> {
   public int compareTo(Edge other) {
     return this.weight - other.weight;
   }
+
+  // Pack the given weight and edge id into a long that orders by weight
+  static long pack(int weight, int id) {
+    return ((long) weight << 32) | id;
+  }
+
+  // Get the weight of the given packed edge
+  static int weightOf(long packed) {
+    return (int) (packed >>> 32);
+  }
+
+  // Get the edge id of the given packed edge
+  static int idOf(long packed) {
+    return (int) packed;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+import java.util.Random;
+
+// Generates a spanning tree row by row with Eller's algorithm, only ever keeping
+// the set labels of the current row, so its extra memory grows with the width alone
+class EllerGenerator implements SpanningTreeGenerator {
+
+  // Generate a tree by joining random neighbors within each row, then carrying
+  // every set of the row down into the next row through at least one tile
+  public long[] generate(BoardStore store, Random rand) {
+    int width = store.width;
+    long[] tree = new long[Math.max(0, store.size() - 1)];
+    int count = 0;
+    // the sets of the current row, as a union-find over its columns
+    UnionFind sets = new UnionFind(width);
+    boolean[] down = new boolean[width];
+    boolean[] carried = new boolean[width];
+    int[] labels = new int[width];
+    int[] next = new int[width];
+
+    for (int row = 0; row < store.height; row++) {
+      boolean last = row == store.height - 1;
+
+      // Join random neighbors in different sets, or all of them on the last row
+      for (int col = 0; col < width - 1; col++) {
+        if ((last || rand.nextBoolean()) && sets.union(col, col + 1)) {
+          tree[count] = Edge.pack(0, store.rightEdge(store.index(row, col)));
+          count++;
+        }
+      }
+      if (last) {
+        break;
+      }
+
+      // Carry random tiles down, then make sure every set is carried at least once
+      for (int col = 0; col < width; col++) {
+        carried[col] = false;
+      }
+      for (int col = 0; col < width; col++) {
+        down[col] = rand.nextBoolean();
+        if (down[col]) {
+          carried[sets.find(col)] = true;
+        }
+      }
+      for (int col = 0; col < width; col++) {
+        int root = sets.find(col);
+        if (!carried[root]) {
+          down[col] = true;
+          carried[root] = true;
+        }
+      }
+
+      // Label the next row: a carried tile keeps its set, labelled by the first
+      // column carrying that set, and every other tile starts a set of its own
+      for (int col = 0; col < width; col++) {
+        labels[col] = -1;
+      }
+      for (int col = 0; col < width; col++) {
+        if (down[col]) {
+          tree[count] = Edge.pack(0, store.bottomEdge(store.index(row, col)));
+          count++;
+          int root = sets.find(col);
+          if (labels[root] == -1) {
+            labels[root] = col;
+          }
+        }
+      }
+      for (int col = 0; col < width; col++) {
+        if (down[col]) {
+          next[col] = labels[sets.find(col)];
+        }
+        else {
+          next[col] = col;
+        }
+      }
+      for (int col = 0; col < width; col++) {
+        sets.parent[col] = next[col];
+        sets.rank[col] = 0;
+      }
+    }
+    return tree;
+  }
+}
@@ -1,33 +1,40 @@
 import java.awt.Color;
 import javalib.worldimages.*;
 
-// Represents a game piece
+// Represents a game piece, as a lightweight view of one tile in a BoardStore
 class GamePiece {
+  // the color bucket of an unpowered piece, one past the last distance bucket
+  static final int UNPOWERED = 33;
+  // the wire color of each color bucket
+  static final Color[] PALETTE = palette();
+  // the colors of the power station star
+  static final Color STAR_OUTLINE = new Color(255, 128, 0);
+  static final Color STAR_FILL = new Color(0, 255, 255);
+
   // in logical coordinates, with the origin
   // at the top-left corner of the screen
   int row;
   int col;
-  // whether this GamePiece is connected to the
-  // adjacent left, right, top, or bottom pieces
-  boolean left;
-  boolean right;
-  boolean top;
-  boolean bottom;
-  // whether the power station is on this piece
-  boolean powerStation;
-  boolean powered;
-  int distanceFromPS;
+  // the board storage holding the wires, power station flag, powered state
+  // and distance from power station of this piece, and this piece's index in it
+  BoardStore store;
+  int index;
 
+  // Creates a standalone piece with its own single-tile storage
   GamePiece(int row, int col, boolean left, boolean right, boolean top, boolean bottom) {
     this.row = row;
     this.col = col;
-    this.left = left;
-    this.right = right;
-    this.top = top;
-    this.bottom = bottom;
-    this.powerStation = false;
-    this.powered = false;
-    this.distanceFromPS = 0;
+    this.store = new BoardStore(1, 1);
+    this.index = 0;
+    this.setWires(left, right, top, bottom);
+  }
+
+  // Creates a view of the tile at the given row and column of the given storage
+  GamePiece(BoardStore store, int row, int col) {
+    this.row = row;
+    this.col = col;
+    this.store = store;
+    this.index = store.index(row, col);
   }
 
   //Generate an image of this, the given GamePiece.
@@ -37,6 +44,12 @@ class GamePiece {
   // - hasPowerStation: if true, draws a fancy star on this tile to represent the power station
   //
   WorldImage tileImage(int size, int wireWidth, Color wireColor, boolean hasPowerStation) {
+    return tileImage(this.wireMask(), size, wireWidth, wireColor, hasPowerStation);
+  }
+
+  // Generate an image of a tile with the given wire mask, as above
+  static WorldImage tileImage(int mask, int size, int wireWidth, Color wireColor,
+                              boolean hasPowerStation) {
     // Start tile image off as a blue square with a wire-width square in the middle,
     // to make image "cleaner" (will look strange if tile has no wire, but that can't be)
     WorldImage image = new OverlayImage(
@@ -45,87 +58,133 @@ class GamePiece {
     WorldImage vWire = new RectangleImage(wireWidth, (size + 1) / 2, OutlineMode.SOLID, wireColor);
     WorldImage hWire = new RectangleImage((size + 1) / 2, wireWidth, OutlineMode.SOLID, wireColor);
 
-    if (this.top) {
+    if ((mask & BoardStore.TOP) != 0) {
       image = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.TOP, vWire, 0, 0, image);
     }
-    if (this.right) {
+    if ((mask & BoardStore.RIGHT) != 0) {
       image = new OverlayOffsetAlign(AlignModeX.RIGHT, AlignModeY.MIDDLE, hWire, 0, 0, image);
     }
-    if (this.bottom) {
+    if ((mask & BoardStore.BOTTOM) != 0) {
       image = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.BOTTOM, vWire, 0, 0, image);
     }
-    if (this.left) {
+    if ((mask & BoardStore.LEFT) != 0) {
       image = new OverlayOffsetAlign(AlignModeX.LEFT, AlignModeY.MIDDLE, hWire, 0, 0, image);
     }
     if (hasPowerStation) {
       image = new OverlayImage(
               new OverlayImage(
-                      new StarImage(size / 3, 7, OutlineMode.OUTLINE, new Color(255, 128, 0)),
-                      new StarImage(size / 3, 7, OutlineMode.SOLID, new Color(0, 255, 255))),
+                      new StarImage(size / 3, 7, OutlineMode.OUTLINE, STAR_OUTLINE),
+                      new StarImage(size / 3, 7, OutlineMode.SOLID, STAR_FILL)),
               image);
     }
     return new OverlayImage(image, new RectangleImage(size+2, size+2, OutlineMode.SOLID, Color.BLACK));
   }
 
   // Rotate the wire status in this game piece
-  // EFFECT: change the left, right, top, bottom field
+  // EFFECT: rotate the wire mask of this piece in its storage
   public void rotate() {
-    boolean temp = this.left;
-    this.left = this.bottom;
-    this.bottom = this.right;
-    this.right = this.top;
-    this.top = temp;
+    this.store.rotate(this.index);
+  }
+
+  // Set all four wires of this game piece
+  // EFFECT: change the wire mask of this piece in its storage
+  public void setWires(boolean left, boolean right, boolean top, boolean bottom) {
+    int mask = 0;
+    if (left) {
+      mask |= BoardStore.LEFT;
+    }
+    if (right) {
+      mask |= BoardStore.RIGHT;
+    }
+    if (top) {
+      mask |= BoardStore.TOP;
+    }
+    if (bottom) {
+      mask |= BoardStore.BOTTOM;
+    }
+    this.store.setWires(this.index, mask);
+  }
+
+  // Add the given wire bits to this game piece
+  // EFFECT: change the wire mask of this piece in its storage
+  public void addWire(int wire) {
+    this.store.addWire(this.index, wire);
+  }
+
+  // Get the wire mask of this game piece
+  public int wireMask() {
+    return this.store.wires(this.index);
   }
 
   // Update the power station state of this game piece
   // EFFECT: change the power station state of this game piece to the given state
   public void updatePowerStation(boolean state) {
-    this.powerStation = state;
+    this.store.setStation(this.index, state);
   }
 
   // Update the power state of this game piece
   // EFFECT: change the power state of this game piece to the given state
   public void updatePowerState(boolean state) {
-    this.powered = state;
+    this.store.setPowered(this.index, state);
   }
 
   // Update the distance from power station of this game piece
   // EFFECT: change the distance from power station of this game piece
   public void updateDistanceFromPS(int distance) {
-    this.distanceFromPS = distance;
+    this.store.setDistance(this.index, distance);
+  }
+
+  // Check if the power station is on this game piece
+  public boolean isPowerStation() {
+    return this.store.isStation(this.index);
+  }
+
+  // Check if this game piece is powered
+  public boolean isPowered() {
+    return this.store.isPowered(this.index);
+  }
+
+  // Get the distance from power station of this game piece
+  public int getDistanceFromPS() {
+    return this.store.distance(this.index);
   }
 
   // Check if this has a wire of the given direction
   public boolean hasConnectionTo(String direction) {
-    if (direction.equals("left")) {
-      return this.left;
-    }
-    if (direction.equals("right")) {
-      return this.right;
-    }
-    if (direction.equals("top")) {
-      return this.top;
+    return this.store.hasWire(this.index, BoardStore.wireOf(direction));
+  }
+
+  // Get the color bucket of this game piece: the number of distance steps of 8 color units
+  // from the power station, capped where the color stops changing, or UNPOWERED
+  public int colorBucket(int radius) {
+    return colorBucket(this.isPowered(), this.getDistanceFromPS(), radius);
+  }
+
+  // Get the color bucket of a piece with the given power state and distance, as above
+  static int colorBucket(boolean powered, int distanceFromPS, int radius) {
+    if (!powered) {
+      return UNPOWERED;
     }
-    if (direction.equals("bottom")) {
-      return this.bottom;
+    if (distanceFromPS == -1 || radius <= 0) {
+      return 0;
     }
-    return false;
+    return Math.min(UNPOWERED - 1, Math.max(0, distanceFromPS));
   }
 
   // Draws the game piece with coloring based on its powered state and distance from power
   public WorldImage drawPowerGamePiece(int size, int wireWidth, int radius) {
-    Color wireColor;
-
-    if (this.powered) {
-      int distanceRatio = 0;
-      if (this.distanceFromPS != -1 && radius > 0) {
-        distanceRatio = Math.min(255, Math.max(0, this.distanceFromPS * 8));
-      }
-      wireColor = new Color(255, 255 - distanceRatio, 0);
-    }
-    else {
-      wireColor = Color.LIGHT_GRAY;
+    return this.tileImage(size, wireWidth, PALETTE[this.colorBucket(radius)],
+            this.isPowerStation());
+  }
+
+  // Build the wire color of every color bucket: yellow fading to red by 8 units
+  // of green per step from the power station, and light gray when unpowered
+  static Color[] palette() {
+    Color[] palette = new Color[UNPOWERED + 1];
+    for (int bucket = 0; bucket < UNPOWERED; bucket++) {
+      palette[bucket] = new Color(255, 255 - Math.min(255, bucket * 8), 0);
     }
-    return this.tileImage(size, wireWidth, wireColor, this.powerStation);
+    palette[UNPOWERED] = Color.LIGHT_GRAY;
+    return palette;
   }
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Represents a local TCP server hosting many light games from one JVM, one game session per
+// connection. A few session loops serve the connections from selectors, so an idle session
+// costs a socket and a small GameSession rather than a thread of its own. The commands of
+// the protocol are described with GameSession, and the server answers I itself with
+//   I open total, then letter count averageNanos maxNanos of every command
+class GameServer {
+  // the letters of the commands the latencies are kept for, the last one standing
+  // for every line that is not a command
+  static final String COMMANDS = "NRMDPI?";
+
+  ServerSocketChannel channel;
+  SessionLoop[] loops;
+  ExecutorService threads;
+  volatile boolean running;
+  // the number of sessions open now and opened since the server started
+  AtomicInteger openSessions;
+  LongAdder totalSessions;
+  // the number of lines, and their total and largest time, of every command
+  LongAdder[] counts;
+  LongAdder[] nanos;
+  LongAccumulator[] maxNanos;
+
+  // Serve on the given local port, or on any free one if it is 0, from the given number
+  // of session loops
+  GameServer(int port, int loops) throws IOException {
+    this.channel = ServerSocketChannel.open();
+    this.channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    this.openSessions = new AtomicInteger();
+    this.totalSessions = new LongAdder();
+    this.counts = new LongAdder[COMMANDS.length()];
+    this.nanos = new LongAdder[COMMANDS.length()];
+    this.maxNanos = new LongAccumulator[COMMANDS.length()];
+    for (int i = 0; i < COMMANDS.length(); i++) {
+      this.counts[i] = new LongAdder();
+      this.nanos[i] = new LongAdder();
+      this.maxNanos[i] = new LongAccumulator(Math::max, 0);
+    }
+    this.loops = new SessionLoop[loops];
+    for (int i = 0; i < loops; i++) {
+      this.loops[i] = new SessionLoop(this);
+    }
+    AtomicInteger threadCount = new AtomicInteger();
+    this.threads = Executors.newFixedThreadPool(loops + 1, task -> {
+      Thread thread = new Thread(task, "game-server-" + threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  // Start a server on the given port, or 7117, and serve until the JVM stops
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int port = 7117;
+    if (args.length > 0) {
+      port = Integer.parseInt(args[0]);
+    }
+    GameServer server = new GameServer(port, Runtime.getRuntime().availableProcessors());
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(server.report())));
+    server.start();
+    System.out.println("serving light games on port " + server.port());
+    while (!server.threads.awaitTermination(1, TimeUnit.DAYS)) {
+      System.out.println(server.report());
+    }
+  }
+
+  // Get the port this server listens on
+  int port() {
+    return this.channel.socket().getLocalPort();
+  }
+
+  // Start accepting connections and serving them
+  // EFFECT: run the session loops, and the acceptor handing them connections in turn
+  void start() {
+    this.running = true;
+    for (SessionLoop loop : this.loops) {
+      this.threads.execute(loop);
+    }
+    this.threads.execute(this::accept);
+  }
+
+  // Accept connections until the server closes, handing them to the loops in turn
+  // EFFECT: count every session opened
+  void accept() {
+    int next = 0;
+    try {
+      while (this.running) {
+        SocketChannel connection = this.channel.accept();
+        this.totalSessions.increment();
+        this.loops[next].add(connection);
+        next = (next + 1) % this.loops.length;
+      }
+    }
+    catch (IOException e) {
+      // The server channel closed
+    }
+  }
+
+  // Stop serving, closing every connection
+  // EFFECT: stop the acceptor and the session loops, and wait for them to finish
+  void close() throws IOException {
+    this.running = false;
+    this.channel.close();
+    for (SessionLoop loop : this.loops) {
+      loop.selector.wakeup();
+    }
+    this.threads.shutdown();
+    try {
+      this.threads.awaitTermination(5, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Answer the given command line of the given session, timing it, and tell if the session
+  // can go on. A command that fails unexpectedly is answered with E internal, and only its
+  // session is given up, rather than the loop serving every other one
+  // EFFECT: play the command on the session, and count its latency
+  boolean handle(GameSession session, String line, StringBuilder out) {
+    long start = System.nanoTime();
+    int command = COMMANDS.length() - 1;
+    if (line.length() > 0 && COMMANDS.indexOf(line.charAt(0)) >= 0) {
+      command = COMMANDS.indexOf(line.charAt(0));
+    }
+    boolean alive = true;
+    if (line.trim().equals("I")) {
+      this.stats(out);
+    }
+    else {
+      try {
+        session.handle(line, out);
+      }
+      catch (RuntimeException | Error e) {
+        // Let go of the game first, in case it is what ran out of memory
+        session.engine = null;
+        session.sent = null;
+        out.append("E internal\n");
+        alive = false;
+      }
+    }
+    long time = System.nanoTime() - start;
+    this.counts[command].increment();
+    this.nanos[command].add(time);
+    this.maxNanos[command].accumulate(time);
+    return alive;
+  }
+
+  // Append the reply to I, with the session counts and the latencies of every command
+  void stats(StringBuilder out) {
+    out.append("I ").append(this.openSessions.get()).append(' ')
+            .append(this.totalSessions.sum());
+    for (int i = 0; i < COMMANDS.length(); i++) {
+      long count = this.counts[i].sum();
+      out.append(' ').append(COMMANDS.charAt(i)).append(' ').append(count).append(' ')
+              .append(count == 0 ? 0 : this.nanos[i].sum() / count).append(' ')
+              .append(this.maxNanos[i].get());
+    }
+    out.append('\n');
+  }
+
+  // Describe the sessions of this server and the latencies of the commands played
+  String report() {
+    StringBuilder result = new StringBuilder();
+    result.append(this.openSessions.get()).append(" open sessions, ")
+            .append(this.totalSessions.sum()).append(" in total");
+    for (int i = 0; i < COMMANDS.length(); i++) {
+      long count = this.counts[i].sum();
+      if (count > 0) {
+        result.append("; ").append(COMMANDS.charAt(i)).append(' ').append(count)
+                .append(" lines, ").append(this.nanos[i].sum() / count / 1000)
+                .append(" us average, ").append(this.maxNanos[i].get() / 1000)
+                .append(" us max");
+      }
+    }
+    return result.toString();
+  }
+}
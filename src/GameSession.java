@@ -0,0 +1,229 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Represents one player's game on a game server, answering the command lines of the
+// server's protocol with reply lines. A session holds no board until its first game starts,
+// and borrows the traversal of the thread serving it, so an idle session stays small
+//
+// The commands, one per line, and their replies:
+//   N [width height]  start a new game, of the given size or the size of the last game
+//                     -> G width height
+//   R row col         rotate a tile                   -> K score
+//   M l|u|r|d         move the power station          -> K score
+//   D                 the tiles that look different from the last D, after evaluating power
+//                     -> D won station count, then index value distance of every tile,
+//                        where the value is the wires, the station bit and 32 if powered
+//   P                 how many tiles are lit, after evaluating power
+//                     -> P powered tiles percent
+//   I                 the server's session counts and command latencies (see GameServer)
+// Any other line, or a command that cannot be played, is answered with E and a reason
+class GameSession {
+  // the size of the first game when none is given, and the largest size a game may have,
+  // small enough that generating it on the thread of a session loop takes a few
+  // milliseconds rather than stalling every other session of the loop
+  static final int DEFAULT_SIZE = 10;
+  static final int MAX_SIZE = 100;
+  // the bit of a tile value in a diff telling that the tile is powered
+  static final int POWERED = 32;
+
+  // the game of this session, or null before the first game starts
+  LightEngine engine;
+  // the value and distance of every tile as the last diff sent them, packed as the value
+  // plus one more than the distance times 64, or -1 if the tile was not sent yet
+  int[] sent;
+  // the traversal shared by every session served by the same thread
+  Traversal traversal;
+  // the bytes of a line that has not ended yet, and the reply bytes not written yet,
+  // or null if there are none
+  byte[] partial;
+  ByteBuffer pending;
+
+  GameSession(Traversal traversal) {
+    this.traversal = traversal;
+  }
+
+  // Answer the given command line, appending the reply line to the given builder
+  // EFFECT: change the game of this session
+  void handle(String line, StringBuilder out) {
+    String[] words = line.trim().split(" ");
+    String command = words[0];
+    if (command.equals("N")) {
+      this.newGame(words, out);
+    }
+    else if (this.engine == null) {
+      out.append("E no game\n");
+    }
+    else if (command.equals("R") && words.length == 3) {
+      this.rotate(words, out);
+    }
+    else if (command.equals("M") && words.length == 2) {
+      this.move(words[1], out);
+    }
+    else if (command.equals("D") && words.length == 1) {
+      this.diff(out);
+    }
+    else if (command.equals("P") && words.length == 1) {
+      this.progress(out);
+    }
+    else {
+      out.append("E unknown command\n");
+    }
+  }
+
+  // Start a new game of the size in the given words, or of the size of the last game
+  // EFFECT: replace the game of this session
+  void newGame(String[] words, StringBuilder out) {
+    int width = DEFAULT_SIZE;
+    int height = DEFAULT_SIZE;
+    if (this.engine != null) {
+      width = this.engine.width;
+      height = this.engine.height;
+    }
+    if (words.length == 3) {
+      width = parse(words[1]);
+      height = parse(words[2]);
+    }
+    else if (words.length != 1) {
+      width = -1;
+    }
+    if (width < 1 || height < 1 || width > MAX_SIZE || height > MAX_SIZE) {
+      out.append("E bad size\n");
+      return;
+    }
+
+    LightEngine engine = new LightEngine(width, height);
+    engine.traversal = this.traversal;
+    engine.batchInput = true;
+    this.engine = engine;
+    this.sent = new int[width * height];
+    Arrays.fill(this.sent, -1);
+    out.append("G ").append(width).append(' ').append(height).append('\n');
+  }
+
+  // Rotate the tile at the row and column in the given words, unless the game is won
+  // EFFECT: change the wires of the tile and the score
+  void rotate(String[] words, StringBuilder out) {
+    LightEngine engine = this.engine;
+    int row = parse(words[1]);
+    int col = parse(words[2]);
+    if (row < 0 || col < 0 || row >= engine.height || col >= engine.width) {
+      out.append("E bad tile\n");
+      return;
+    }
+    if (!engine.allPowered) {
+      engine.rotate(row, col);
+    }
+    out.append("K ").append(engine.score).append('\n');
+  }
+
+  // Move the power station the way the given letter points, unless the game is won
+  // EFFECT: change the location of the power station and the score
+  void move(String direction, StringBuilder out) {
+    int wire = "lurd".indexOf(direction);
+    if (direction.length() != 1 || wire < 0) {
+      out.append("E bad direction\n");
+      return;
+    }
+    if (!this.engine.allPowered) {
+      this.engine.movePowerStation(1 << wire);
+    }
+    out.append("K ").append(this.engine.score).append('\n');
+  }
+
+  // Describe every tile that looks different from the last diff, after evaluating the
+  // power state
+  // EFFECT: evaluate a stale power state, remember the tiles sent, and forget the changed
+  // tiles of the board
+  void diff(StringBuilder out) {
+    LightEngine engine = this.engine;
+    engine.refreshPower();
+    BoardStore store = engine.store;
+    BitSet changed = store.changed;
+    // A tile changed and changed back since the last diff is not sent again
+    for (int tile = changed.nextSetBit(0); tile >= 0; tile = changed.nextSetBit(tile + 1)) {
+      if (this.sent[tile] == this.code(store, tile)) {
+        changed.clear(tile);
+      }
+    }
+    out.append("D ").append(engine.allPowered ? 1 : 0).append(' ').append(engine.station())
+            .append(' ').append(changed.cardinality());
+    for (int tile = changed.nextSetBit(0); tile >= 0; tile = changed.nextSetBit(tile + 1)) {
+      int code = this.code(store, tile);
+      this.sent[tile] = code;
+      out.append(' ').append(tile).append(' ').append(code & (POWERED * 2 - 1)).append(' ')
+              .append((code >> 6) - 1);
+    }
+    out.append('\n');
+    changed.clear();
+  }
+
+  // Get the value and distance of the tile at the given index of the given board, packed
+  // as the value plus one more than the distance times 64
+  int code(BoardStore store, int tile) {
+    int value = store.tiles[tile];
+    if (store.isPowered(tile)) {
+      value |= POWERED;
+    }
+    return value | ((store.distance(tile) + 1) << 6);
+  }
+
+  // Tell how many tiles are powered, out of how many, and the percentage lit, after
+  // evaluating the power state
+  // EFFECT: evaluate a stale power state
+  void progress(StringBuilder out) {
+    LightEngine engine = this.engine;
+    out.append("P ").append(engine.poweredTiles()).append(' ').append(engine.store.size())
+            .append(' ').append(engine.percentLit()).append('\n');
+  }
+
+  // Read the given word as a number, or -1 if it is not one
+  static int parse(String word) {
+    if (word.isEmpty() || word.length() > 9) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = 0; i < word.length(); i++) {
+      char c = word.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  // Take the line ending just before the given position of the given bytes, starting at
+  // the given position after any unfinished line kept from before
+  // EFFECT: forget the unfinished line
+  String line(byte[] bytes, int from, int to) {
+    if (this.partial == null) {
+      return new String(bytes, from, to - from, StandardCharsets.US_ASCII);
+    }
+    byte[] partial = this.partial;
+    this.partial = null;
+    return new String(partial, StandardCharsets.US_ASCII)
+            + new String(bytes, from, to - from, StandardCharsets.US_ASCII);
+  }
+
+  // Keep the given bytes of a line that has not ended yet, and tell if the line is still
+  // no longer than the given length
+  // EFFECT: change the unfinished line of this session
+  boolean keep(byte[] bytes, int from, int to, int maxLength) {
+    if (from == to) {
+      return true;
+    }
+    int kept = this.partial == null ? 0 : this.partial.length;
+    if (kept + to - from > maxLength) {
+      return false;
+    }
+    byte[] partial = new byte[kept + to - from];
+    if (kept > 0) {
+      System.arraycopy(this.partial, 0, partial, 0, kept);
+    }
+    System.arraycopy(bytes, from, partial, kept, to - from);
+    this.partial = partial;
+    return true;
+  }
+}
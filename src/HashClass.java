@@ -1,34 +1,49 @@
-import java.util.ArrayList;
-import java.util.HashMap;
-
-// Represents a data structure that manages connected components for Kruskal's algorithm
+// Represents a data structure that manages connected components for Kruskal's algorithm,
+// as a disjoint-set over the dense tile indices of a board
 class UnionFind {
-  HashMap<GamePiece, GamePiece> parent;
+  // the parent of each tile index, a root being its own parent
+  int[] parent;
+  // an upper bound on the height of the tree under each root
+  byte[] rank;
 
-  // Initializes each GamePiece to be its own parent 
-  UnionFind(ArrayList<GamePiece> nodes) {
-    parent = new HashMap<GamePiece, GamePiece>();
-    for (GamePiece node : nodes) {
-      parent.put(node, node);
+  // Initializes each tile index to be its own parent
+  UnionFind(int size) {
+    this.parent = new int[size];
+    this.rank = new byte[size];
+    for (int i = 0; i < size; i++) {
+      this.parent[i] = i;
     }
   }
 
-  // Finds root of component with path compression
-  // EFFECT: updates parent pointers for all nodes in the path to point directly to the root
-  GamePiece find(GamePiece node) {
-    if (parent.get(node) != node) {
-      parent.put(node, find(parent.get(node)));
+  // Finds root of component with path halving
+  // EFFECT: updates the parent pointer of every other node on the path to its grandparent
+  int find(int node) {
+    while (this.parent[node] != node) {
+      this.parent[node] = this.parent[this.parent[node]];
+      node = this.parent[node];
     }
-    return parent.get(node);
+    return node;
   }
 
-  // Merges two components by attaching root of one to root of the other
-  // EFFECT: updates the parent pointer of rootA to point to rootB
-  void union(GamePiece a, GamePiece b) {
-    GamePiece rootA = find(a);
-    GamePiece rootB = find(b);
-    if (rootA != rootB) {
-      parent.put(rootA, rootB);
+  // Merges two components by attaching the root of lower rank to the other root,
+  // and tells if they were different components
+  // EFFECT: updates the parent pointer of one root, and the rank of the other on a tie
+  boolean union(int a, int b) {
+    int rootA = this.find(a);
+    int rootB = this.find(b);
+    if (rootA == rootB) {
+      return false;
+    }
+    if (this.rank[rootA] < this.rank[rootB]) {
+      this.parent[rootA] = rootB;
+    }
+    else if (this.rank[rootA] > this.rank[rootB]) {
+      this.parent[rootB] = rootA;
+    }
+    else {
+      this.parent[rootB] = rootA;
+      this.rank[rootA]++;
     }
+    return true;
   }
-}
\ No newline at end of file
+}
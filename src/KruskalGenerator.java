@@ -0,0 +1,76 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// Generates a spanning tree with Kruskal's algorithm over random edge weights
+class KruskalGenerator implements SpanningTreeGenerator {
+  // the number of distinct random edge weights
+  static final int WEIGHTS = 1000;
+
+  // Generate the minimum spanning tree of the board under random weights
+  public long[] generate(BoardStore store, Random rand) {
+    long[] allEdges = this.generateAllPossibleEdges(store, rand);
+    return this.buildMinimumSpanningTree(store, this.sortEdges(allEdges));
+  }
+
+  // Generates all possible edges between adjacent tiles with random weights,
+  // packed as weight and edge id
+  long[] generateAllPossibleEdges(BoardStore store, Random rand) {
+    long[] edges = new long[2 * store.width * store.height - store.width - store.height];
+    int count = 0;
+    for (int row = 0; row < store.height; row++) {
+      for (int col = 0; col < store.width; col++) {
+        int current = store.index(row, col);
+        if (col < store.width - 1) {
+          edges[count] = Edge.pack(rand.nextInt(WEIGHTS), store.rightEdge(current));
+          count++;
+        }
+        if (row < store.height - 1) {
+          edges[count] = Edge.pack(rand.nextInt(WEIGHTS), store.bottomEdge(current));
+          count++;
+        }
+      }
+    }
+    return edges;
+  }
+
+  // Sorts the given packed edges by weight with a stable counting sort,
+  // in time linear in the number of edges
+  long[] sortEdges(long[] edges) {
+    int[] starts = new int[WEIGHTS + 1];
+    for (long edge : edges) {
+      starts[Edge.weightOf(edge) + 1]++;
+    }
+    for (int weight = 0; weight < WEIGHTS; weight++) {
+      starts[weight + 1] += starts[weight];
+    }
+
+    long[] sorted = new long[edges.length];
+    for (long edge : edges) {
+      int weight = Edge.weightOf(edge);
+      sorted[starts[weight]] = edge;
+      starts[weight]++;
+    }
+    return sorted;
+  }
+
+  // Applies Kruskal's algorithm to the given edges to find the minimum spanning tree
+  long[] buildMinimumSpanningTree(BoardStore store, long[] edges) {
+    long[] result = new long[Math.max(0, store.size() - 1)];
+    UnionFind uf = new UnionFind(store.size());
+
+    int count = 0;
+    int i = 0;
+    while (i < edges.length && count < result.length) {
+      int id = Edge.idOf(edges[i]);
+      if (uf.union(store.edgeFrom(id), store.edgeTo(id))) {
+        result[count] = edges[i];
+        count++;
+      }
+      i++;
+    }
+    if (count < result.length) {
+      return Arrays.copyOf(result, count);
+    }
+    return result;
+  }
+}
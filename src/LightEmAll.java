@@ -1,48 +1,59 @@
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Random;
 
-import tester.*;
 import javalib.impworld.*;
 import java.awt.Color;
 import javalib.worldimages.*;
 
-// Represents a light game world
+// Represents a light game world, drawing and playing the game of its engine
 class LightEmAll extends World {
-  // a list of columns of GamePieces,
-  // i.e., represents the board in column-major order
+  // the rules and state of the game
+  LightEngine engine;
+  // the shared images of the board's tiles
+  TileImageCache tileImages;
+  // a list of rows of GamePieces,
+  // each GamePiece is a view of its tile in the engine's store
   ArrayList<ArrayList<GamePiece>> board;
   // a list of all nodes
   ArrayList<GamePiece> nodes;
-  // a list of edges of the minimum spanning tree
-  ArrayList<Edge> mst;
-  // the width and height of the board
-  int width;
-  int height;
-  // the current location of the power station,
-  // as well as its effective radius
-  int powerRow;
-  int powerCol;
-  int radius;
   ArrayList<String> directions;
-  Random rand;
-  boolean allPowered;
-  int tick;
-  int score;
+  // the first row and column of the board shown in the window,
+  // and the number of rows and columns of tiles the window shows
+  int viewRow;
+  int viewCol;
+  int viewRows;
+  int viewCols;
+  // whether the scene is drawn from a retained board layer that only redraws
+  // the tiles that changed, instead of placing every tile on every frame
+  boolean retainedRendering;
+  // the tile images of the retained board layer, each exactly one tile wide
+  TileImageCache layerImages;
+  // the retained board layer, and the last scene drawn from it with its score and time
+  BoardLayer boardLayer;
+  WorldScene lastScene;
+  int lastScore;
+  int lastTick;
+  // the number of tiles drawn for the last scene
+  int drawnTiles;
 
   LightEmAll(int width, int height) {
-    this.width = width;
-    this.height = height;
-    this.powerRow = 0;
-    this.powerCol = 0;
+    this(width, height, new KruskalGenerator());
+  }
+
+  LightEmAll(int width, int height, SpanningTreeGenerator generator) {
+    this(new LightEngine(width, height, generator));
+  }
+
+  LightEmAll(LightEngine engine) {
+    this.engine = engine;
+    this.tileImages = new TileImageCache(50, 5);
     this.board = new ArrayList<ArrayList<GamePiece>>();
     this.nodes = new ArrayList<GamePiece>();
-    this.mst = new ArrayList<Edge>();
-    this.rand = new Random();
-    this.tick = 0;
-    this.score = 0;
-    this.allPowered = false;
+    this.retainedRendering = false;
+    this.viewRow = 0;
+    this.viewCol = 0;
+    this.viewRows = engine.height;
+    this.viewCols = engine.width;
+    this.layerImages = new TileImageCache(48, 5);
 
     this.directions = new ArrayList<String>();
     this.directions.add("left");
@@ -50,35 +61,79 @@ class LightEmAll extends World {
     this.directions.add("top");
     this.directions.add("bottom");
 
-    // Generate the board with connections and random rotations
-    this.generateBoard();
+    // View the board the engine generated
+    this.updateViews();
   }
 
   // Make the scene for this current world based on this board
-  // EFFECT: draw all the game components on to the scene
+  // EFFECT: evaluate a stale power state, and draw all the game components on to the scene
   public WorldScene makeScene() {
-    WorldScene scene = new WorldScene(this.width * 50, this.height * 50 + 40);
+    PhaseEvent event = new PhaseEvent();
+    event.begin();
+    this.engine.refreshPower();
+    WorldScene scene;
+    if (this.retainedRendering) {
+      scene = this.makeRetainedScene();
+    }
+    else {
+      scene = new WorldScene(this.viewCols * 50, this.viewRows * 50 + 40);
 
-    // Draw scene for the board and bottom text part
-    this.drawBoard(scene);
-    this.drawBottom(scene);
+      // Draw scene for the board and bottom text part
+      this.drawBoard(scene);
+      this.drawBottom(scene);
 
-    // Draw winning scene if all the nodes on this board is powered
-    if(this.allPowered) {
-      this.drawWin(scene);
+      // Draw winning scene if all the nodes on this board is powered
+      if(this.engine.allPowered) {
+        this.drawWin(scene);
+      }
+      this.drawnTiles = this.viewRows * this.viewCols;
+    }
+
+    event.finish("makeScene", this.engine.width, this.engine.height, this.drawnTiles, 0);
+    return scene;
+  }
+
+  // Make the scene for this current world from the retained board layer, redrawing only
+  // the tiles that changed, and reusing the last scene if nothing changed at all
+  // EFFECT: update the board layer, remember the scene with its score and time, and count
+  // the tiles drawn
+  public WorldScene makeRetainedScene() {
+    LightEngine engine = this.engine;
+    engine.refreshPower();
+    if (this.boardLayer == null || !this.boardLayer.shows(engine.store, engine.radius,
+            this.viewRow, this.viewCol, this.viewRows, this.viewCols)) {
+      this.boardLayer = new BoardLayer(engine.store, this.layerImages, engine.radius,
+              this.viewRow, this.viewCol, this.viewRows, this.viewCols);
+      this.drawnTiles = this.viewRows * this.viewCols;
+    }
+    else {
+      this.drawnTiles = this.boardLayer.update();
+    }
+    boolean changed = this.drawnTiles > 0;
+    if (!changed && this.lastScene != null
+            && this.lastScore == engine.score && this.lastTick == engine.tick) {
+      return this.lastScene;
     }
 
+    WorldScene scene = new WorldScene(this.viewCols * 50, this.viewRows * 50 + 40);
+    scene.placeImageXY(this.boardLayer.image(), this.viewCols * 25, this.viewRows * 25);
+    this.drawBottom(scene);
+    if (engine.allPowered) {
+      this.drawWin(scene);
+    }
+    this.lastScene = scene;
+    this.lastScore = engine.score;
+    this.lastTick = engine.tick;
     return scene;
   }
 
-  // Create scene for the game board
-  // EFFECT: draw the game board on to the given scene
+  // Create scene for the part of the game board shown in the window
+  // EFFECT: draw the visible game pieces on to the given scene
   public void drawBoard(WorldScene scene) {
-    for (int i = 0; i < this.board.size(); i++) {
-      for (int j = 0; j < this.board.get(i).size(); j++) {
-        GamePiece current = this.board.get(i).get(j);
-        boolean powerStation = (i == this.powerCol && j == this.powerRow);
-        WorldImage currentImage = current.drawPowerGamePiece(50, 5, this.radius);
+    for (int i = 0; i < this.viewRows; i++) {
+      for (int j = 0; j < this.viewCols; j++) {
+        GamePiece current = this.board.get(this.viewRow + i).get(this.viewCol + j);
+        WorldImage currentImage = this.tileImages.image(current, this.engine.radius);
         scene.placeImageXY(currentImage, (50 * j) + 25, (50 * i) + 25);
       }
     }
@@ -87,10 +142,10 @@ class LightEmAll extends World {
   // Create the scene for the bottom part
   // EFFECT: draw the score and time on to the given scene
   public void drawBottom(WorldScene scene) {
-    WorldImage scorePart = new TextImage("Score: " + this.score, 20, Color.BLACK);
-    WorldImage tickPart = new TextImage("Time : " + this.tick, 20, Color.BLACK);
-    scene.placeImageXY(scorePart, this.width * 10, this.height * 50 + 20);
-    scene.placeImageXY(tickPart, this.width * 40, this.height * 50 + 20);
+    WorldImage scorePart = new TextImage("Score: " + this.engine.score, 20, Color.BLACK);
+    WorldImage tickPart = new TextImage("Time : " + this.engine.tick, 20, Color.BLACK);
+    scene.placeImageXY(scorePart, this.viewCols * 10, this.viewRows * 50 + 20);
+    scene.placeImageXY(tickPart, this.viewCols * 40, this.viewRows * 50 + 20);
   }
 
   // Create the scene for the win game
@@ -98,12 +153,57 @@ class LightEmAll extends World {
   public void drawWin(WorldScene scene) {
     WorldImage winText = new TextImage("You Win", 50, Color.GREEN);
     WorldImage restartText = new TextImage("Press r to restart", 50, Color.GREEN);
-    scene.placeImageXY(winText, this.width * 50 / 2, this.height * 50 / 2 - 25);
-    scene.placeImageXY(restartText, this.width * 50 / 2, this.height * 50 / 2 + 25);
+    scene.placeImageXY(winText, this.viewCols * 50 / 2, this.viewRows * 50 / 2 - 25);
+    scene.placeImageXY(restartText, this.viewCols * 50 / 2, this.viewRows * 50 / 2 + 25);
+  }
+
+  // Show the given number of rows and columns of tiles in the window, at most the whole board
+  // EFFECT: change the size of the viewport, keeping it on the board
+  public void setViewport(int rows, int cols) {
+    this.viewRows = Math.max(1, Math.min(rows, this.engine.height));
+    this.viewCols = Math.max(1, Math.min(cols, this.engine.width));
+    this.scrollTo(this.viewRow, this.viewCol);
+  }
+
+  // Scroll the window so that its first row and column are the given ones,
+  // as close as the edges of the board allow
+  // EFFECT: change the first row and column of the viewport
+  public void scrollTo(int row, int col) {
+    this.viewRow = Math.max(0, Math.min(row, this.engine.height - this.viewRows));
+    this.viewCol = Math.max(0, Math.min(col, this.engine.width - this.viewCols));
+  }
+
+  // Scroll the window just enough to show the tile at the given row and column
+  // EFFECT: change the first row and column of the viewport
+  public void scrollToShow(int row, int col) {
+    int top = Math.min(this.viewRow, row);
+    int left = Math.min(this.viewCol, col);
+    this.scrollTo(Math.max(top, row - this.viewRows + 1), Math.max(left, col - this.viewCols + 1));
+  }
+
+  // Pan the window one tile in the direction of the given key, and tell if it was a pan key
+  // EFFECT: change the first row and column of the viewport
+  public boolean panViewport(String key) {
+    if (key.equals("w")) {
+      this.scrollTo(this.viewRow - 1, this.viewCol);
+    }
+    else if (key.equals("s")) {
+      this.scrollTo(this.viewRow + 1, this.viewCol);
+    }
+    else if (key.equals("a")) {
+      this.scrollTo(this.viewRow, this.viewCol - 1);
+    }
+    else if (key.equals("d")) {
+      this.scrollTo(this.viewRow, this.viewCol + 1);
+    }
+    else {
+      return false;
+    }
+    return true;
   }
 
   // Handler to handle key input
-  // EFFECT: change this power column and this power row
+  // EFFECT: change the engine's power column and power row, or undo or redo a move
   public void onKeyEvent(String key) {
     // Reset the game
     if (key.equals("r")) {
@@ -111,159 +211,78 @@ class LightEmAll extends World {
       return;
     }
 
-    // Move the power station
-    if (!this.allPowered) {
-      this.movePowerStation(key);
+    // Pan the window without touching the board
+    if (this.panViewport(key)) {
+      return;
     }
 
-    // Update the power status on this game board
-    this.updatePower();
-  }
-
-  // Reset the game
-  // EFFECT: change the power row, column, tick, score, allPowered field and generate a new board
-  public void resetGame() {
-    // Reset the power station position to top-left
-    this.powerRow = 0;
-    this.powerCol = 0;
-    this.tick = 0;
-    this.score = 0;
-    this.allPowered = false;
-    this.generateBoard();
-  }
-
-  // Move the power station by the given key 
-  // EFFECT: change this power column and this power row
-  public void movePowerStation(String key) {
-    GamePiece currentPiece = this.board.get(powerCol).get(powerRow);
-
-    if (key.equals("left") && this.powerRow > 0 && currentPiece.left) {
-      if (this.getNeighbor(currentPiece, "left").right) {
-        this.board.get(powerCol).get(powerRow).updatePowerStation(false);
-        this.powerRow--;
-        this.score++;
-      }
-    }
-    if (key.equals("right") && this.powerRow < this.width - 1 && currentPiece.right) {
-      if (this.getNeighbor(currentPiece, "right").left) {
-        this.board.get(powerCol).get(powerRow).updatePowerStation(false);
-        this.powerRow++;
-        this.score++;
+    // Undo or redo a move, keeping the power station in the window
+    if ((key.equals("z") || key.equals("y")) && !this.engine.allPowered) {
+      if (key.equals("z")) {
+        this.engine.undo();
       }
-    }
-    if (key.equals("up") && this.powerCol > 0 && currentPiece.top) {
-      if (this.getNeighbor(currentPiece, "top").bottom) {
-        this.board.get(powerCol).get(powerRow).updatePowerStation(false);
-        this.powerCol--;
-        this.score++;
+      else {
+        this.engine.redo();
       }
+      this.scrollToShow(this.engine.powerCol, this.engine.powerRow);
+      return;
     }
-    if (key.equals("down") && this.powerCol < this.height - 1 && currentPiece.bottom) {
-      if (this.getNeighbor(currentPiece, "bottom").top) {
-        this.board.get(powerCol).get(powerRow).updatePowerStation(false);
-        this.powerCol++;
-        this.score++;
-      }
+
+    // Move the power station, keeping it in the window
+    if (!this.engine.allPowered) {
+      this.engine.movePowerStation(key);
+      this.scrollToShow(this.engine.powerCol, this.engine.powerRow);
     }
   }
 
+  // Reset the game
+  // EFFECT: reset the engine with a new board, and view its tiles
+  public void resetGame() {
+    this.engine.resetGame();
+    this.updateViews();
+  }
+
   // Update the time for the game
-  // EFFECT: change the value of the tick field
+  // EFFECT: change the value of the engine's tick field
   public void onTick() {
-    if(!this.allPowered) {
-      this.tick++;
-    }
+    this.engine.advanceTime();
   }
 
   // Handler to handle all mouse input
   // EFFECT: rotate the game piece on the board based on the given position
   public void onMousePressed(Posn pos) {
     // Rotate the game piece according to the given position
-    if(pos.x <= this.width * 50 && pos.y <= this.height * 50 && !this.allPowered) {
-      int colNum = pos.y / 50;
-      int rowNum = pos.x / 50;
-      this.board.get(colNum).get(rowNum).rotate();
-      this.score++;
+    if(pos.x >= 0 && pos.y >= 0 && pos.x < this.viewCols * 50 && pos.y < this.viewRows * 50
+            && !this.engine.allPowered) {
+      this.engine.rotate(this.viewRow + pos.y / 50, this.viewCol + pos.x / 50);
     }
-
-    // Update the power status on this board
-    this.updatePower();
-  }
-
-  // Update the power status of all game pieces
-  // EFFECT: change the powered state of the game piece on this board
-  public void updatePower() {
-    for (ArrayList<GamePiece> column : this.board) {
-      for (GamePiece piece : column) {
-        piece.updatePowerState(false);
-      }
-    }
-
-    GamePiece powerSource = this.board.get(this.powerCol).get(this.powerRow);
-
-    powerSource.updatePowerStation(true);
-    powerSource.updatePowerState(true);
-    powerSource.updateDistanceFromPS(0);;
-
-    ArrayList<GamePiece> queue = new ArrayList<GamePiece>();
-    ArrayList<GamePiece> visited = new ArrayList<GamePiece>();
-
-    queue.add(powerSource);
-    visited.add(powerSource);
-
-    while (!queue.isEmpty()) {
-      GamePiece current = queue.remove(0);
-
-      for (String direction : this.directions) {
-        GamePiece neighbor = this.getNeighbor(current, direction);
-        if (neighbor != null && !visited.contains(neighbor)) {
-          String opposite = this.getOppositeDirection(direction);
-          if (current.hasConnectionTo(direction) && neighbor.hasConnectionTo(opposite)) {
-            neighbor.updateDistanceFromPS(current.distanceFromPS + 1);
-            if (neighbor.distanceFromPS <= this.radius) {
-              neighbor.updatePowerState(true);
-            }
-            queue.add(neighbor);
-            visited.add(neighbor);
-          }
-        }
-      }
-    }
-
-    this.allPowered = this.allPowered();
   }
 
   // Updated method that handles board generation
-  // EFFECT: mutate the board, nodes, and MST
+  // EFFECT: generate a new board in the engine, and view its tiles
   public void generateBoard() {
-    // Initialize board with all GamePieces
-    this.initializeEmptyBoard();
-
-    // Generate MST and set connections
-    this.generateConnectionsFromMST();
-
-    // Set radius based on the calculated diameter
-    this.radius = this.calculateDiameter() / 2 + 1;
-
-    // Randomly rotate each piece
-    this.randomizeRotations();
-
-    // Set power station and update power
-    this.board.get(powerCol).get(powerRow).updatePowerStation(true);
-    this.updatePower();
+    this.engine.generateBoard();
+    this.updateViews();
   }
 
-  // Initialize board with empty GamePieces 
-  // EFFECT: mutate the board, nodes, and MST to default
+  // Initialize board with empty GamePieces
+  // EFFECT: empty the engine's board, and view its tiles
   public void initializeEmptyBoard() {
+    this.engine.initializeEmptyBoard();
+    this.updateViews();
+  }
+
+  // Make a GamePiece view of every tile in the engine's store
+  // EFFECT: mutate the board and nodes
+  public void updateViews() {
+    BoardStore store = this.engine.store;
     this.board.clear();
     this.nodes.clear();
-    this.mst.clear();
 
-    for (int row = 0; row < this.height; row++) {
+    for (int row = 0; row < store.height; row++) {
       ArrayList<GamePiece> rowList = new ArrayList<>();
-      for (int col = 0; col < this.width; col++) {
-        GamePiece piece = new GamePiece(row, col, false, false, false, false);
+      for (int col = 0; col < store.width; col++) {
+        GamePiece piece = new GamePiece(store, row, col);
         rowList.add(piece);
         this.nodes.add(piece);
       }
@@ -271,201 +290,38 @@ class LightEmAll extends World {
     }
   }
 
-  // Generates connections using MST
-  // EFFECT: mutate this MST and set connections
-  public void generateConnectionsFromMST() {
-    // Generate all possible edges with random weights
-    ArrayList<Edge> allEdges = this.generateAllPossibleEdges();
-
-    // Sort edges by weight
-    Collections.sort(allEdges);
-
-    // Apply Kruskal's algorithm to this find MST
-    this.mst = this.buildMinimumSpanningTree(allEdges);
-
-    // Set the connections based on MST edges
-    this.setConnectionsFromMST();
-  }
-
-  // Generates all possible edges between adjacent nodes with random weights
-  public ArrayList<Edge> generateAllPossibleEdges() {
-    ArrayList<Edge> edges = new ArrayList<Edge>();
-    for (int row = 0; row < this.height; row++) {
-      for (int col = 0; col < this.width; col++) {
-        GamePiece current = this.board.get(row).get(col);
-        if (col < this.width - 1) {
-          GamePiece right = this.board.get(row).get(col + 1);
-          edges.add(new Edge(current, right, this.rand.nextInt(1000)));
-        }
-        if (row < this.height - 1) {
-          GamePiece bottom = this.board.get(row + 1).get(col);
-          edges.add(new Edge(current, bottom, this.rand.nextInt(1000)));
-        }
-      }
-    }
-    return edges;
-  }
-
-  // Applies Kruskal's algorithm to find the minimum spanning tree
-  public ArrayList<Edge> buildMinimumSpanningTree(ArrayList<Edge> edges) {
+  // Builds the edges of the minimum spanning tree as Edges between GamePieces,
+  // for tests and debugging
+  public ArrayList<Edge> mstEdges() {
     ArrayList<Edge> result = new ArrayList<Edge>();
-    UnionFind uf = new UnionFind(this.nodes);
-
-    int i = 0;
-    while (i < edges.size() && result.size() < this.nodes.size() - 1) {
-      Edge edge = edges.get(i);
-      GamePiece rootFrom = uf.find(edge.from);
-      GamePiece rootTo = uf.find(edge.to);
-      if (rootFrom != rootTo) {
-        result.add(edge);
-        uf.union(rootFrom, rootTo);
-      }
-      i++;
+    for (long edge : this.engine.tree) {
+      int id = Edge.idOf(edge);
+      result.add(new Edge(this.nodes.get(this.engine.store.edgeFrom(id)),
+              this.nodes.get(this.engine.store.edgeTo(id)), Edge.weightOf(edge)));
     }
     return result;
   }
 
-  // Sets connections between pieces based on MST edges
-  // EFFECT: mutate the game pieces wires boolean
-  public void setConnectionsFromMST() {
-    for (Edge edge : this.mst) {
-      int rowFrom = edge.from.row;
-      int colFrom = edge.from.col;
-      int rowTo = edge.to.row;
-      int colTo = edge.to.col;
-
-      if (rowFrom == rowTo) {
-        if (colFrom < colTo) {
-          edge.from.right = true;
-          edge.to.left = true;
-        }
-        else {
-          edge.from.left = true;
-          edge.to.right = true;
-        }
-      }
-      else {
-        if (rowFrom < rowTo) {
-          edge.from.bottom = true;
-          edge.to.top = true;
-        }
-        else {
-          edge.from.top = true;
-          edge.to.bottom = true;
-        }
-      }
-    }
-  }
-
-  // Randomly rotate each node on the board
-  // EFFECT: mutate the game piece's wire boolean
-  public void randomizeRotations() {
-    for (ArrayList<GamePiece> row : board) {
-      for (GamePiece piece : row) {
-        int rotations = this.rand.nextInt(4);
-        for (int i = 0; i < rotations; i++) {
-          piece.rotate();
-        }
-      }
-    }
-  }
-
-  // Check whether all the nodes on the board is powered
-  public boolean allPowered() {
-    for (int i = 0; i < this.nodes.size(); i++) {
-      if (!this.nodes.get(i).powered) {
-        return false;
-      }
-    }
-    return true;
-  }
-
   // Get the neighbor game piece of the given game piece of the given direction
+  // if the game piece has a wire that way
   public GamePiece getNeighbor(GamePiece origin, String direction) {
-    if (direction.equals("left") && origin.hasConnectionTo(direction)
-            && origin.col > 0) {
-      return this.board.get(origin.row).get(origin.col - 1);
-    }
-    if (direction.equals("right") && origin.hasConnectionTo(direction)
-            && origin.col < this.width - 1) {
-      return this.board.get(origin.row).get(origin.col + 1);
+    BoardStore store = this.engine.store;
+    int wire = BoardStore.wireOf(direction);
+    int other = store.neighbor(origin.index, wire);
+    if (other == -1 || !store.hasWire(origin.index, wire)) {
+      return null;
     }
-    if (direction.equals("top") && origin.hasConnectionTo(direction)
-            && origin.row > 0) {
-      return this.board.get(origin.row - 1).get(origin.col);
-    }
-    if (direction.equals("bottom") && origin.hasConnectionTo(direction)
-            && origin.row < this.height - 1) {
-      return this.board.get(origin.row + 1).get(origin.col);
-    }
-    return null;
+    return this.nodes.get(other);
   }
 
   // Helper to get the opposite direction string of the given direction
   public String getOppositeDirection(String direction) {
-    if (direction.equals("left")) {
-      return "right";
-    }
-    if (direction.equals("right")) {
-      return "left";
-    }
-    if (direction.equals("top")) {
-      return "bottom";
-    }
-    if (direction.equals("bottom")) {
-      return "top";
-    }
-    return null;
+    return BoardStore.directionOf(BoardStore.OPPOSITE[BoardStore.wireOf(direction)]);
   }
 
-  // Calculate the diameter of this board
-  public int calculateDiameter() {
-    GamePiece start = this.board.get(this.powerCol).get(this.powerRow);
-    GamePiece firstBFSend = this.findFurthestNode(start);
-    GamePiece secondBFSend = this.findFurthestNode(firstBFSend);
-
-    // Find the max distance and calculate radius
-    int diameter = 0;
-    for (GamePiece gp : this.nodes) {
-      if (gp.distanceFromPS > diameter) {
-        diameter = gp.distanceFromPS;
-      }
-    }
-
-    return diameter;
-  }
-
-  // Breath first search to find the farthest node
+  // Breath first search to find the farthest node from the given game piece
   // EFFECT: mutate the distance from power station for all game piece in this board
   public GamePiece findFurthestNode(GamePiece start) {
-    for (GamePiece gp : this.nodes) {
-      gp.updateDistanceFromPS(-1);;
-    }
-
-    ArrayList<GamePiece> queue = new ArrayList<GamePiece>();
-    start.updateDistanceFromPS(0);
-    queue.add(start);
-    GamePiece furthest = start;
-
-    while (!queue.isEmpty()) {
-      GamePiece current = queue.remove(0);
-
-      for (String direction : this.directions) {
-        GamePiece neighbor = this.getNeighbor(current, direction);
-        if (neighbor != null && neighbor.distanceFromPS == -1) {
-          String opposite = this.getOppositeDirection(direction);
-          if (current.hasConnectionTo(direction) && neighbor.hasConnectionTo(opposite)) {
-            neighbor.updateDistanceFromPS(current.distanceFromPS + 1);
-            queue.add(neighbor);
-
-            if (neighbor.distanceFromPS > furthest.distanceFromPS) {
-              furthest = neighbor;
-            }
-          }
-        }
-      }
-    }
-
-    return furthest;
+    return this.nodes.get(this.engine.findFurthestNode(start.index));
   }
 }
@@ -0,0 +1,646 @@
+import java.util.Random;
+
+// Represents the rules of a light game without any way to draw or play it: the board,
+// its generation, rotating tiles, moving the power station, power and winning
+class LightEngine {
+  // the compact storage of every tile's wires, power and distance
+  BoardStore store;
+  // the reusable engine behind every traversal of the board
+  Traversal traversal;
+  // the edges of the minimum spanning tree, packed with their weights
+  long[] tree;
+  // the width and height of the board
+  int width;
+  int height;
+  // the current location of the power station,
+  // as well as its effective radius
+  int powerRow;
+  int powerCol;
+  int radius;
+  // the random numbers behind every new board, and the seed they started from
+  Random rand;
+  long seed;
+  boolean allPowered;
+  int tick;
+  int score;
+  // whether a rotation repairs the power state incrementally,
+  // instead of recomputing it for the whole board
+  boolean incrementalPower;
+  // whether input only marks the power state stale, to be evaluated at most once before it
+  // is next drawn or queried, instead of after every event
+  boolean batchInput;
+  // whether the power state is out of date with the wires and the power station, and the
+  // only tile rotated since it was evaluated with its mask back then, or -1 if more changed
+  boolean powerStale;
+  int staleTile;
+  int staleMask;
+  // the generator of the spanning tree behind every new board
+  SpanningTreeGenerator generator;
+  // the journal recording every move of this game, or null if none does
+  MoveJournal journal;
+  // the versions of the board for undo and redo, or null if they are not kept
+  BoardHistory history;
+
+  LightEngine(int width, int height) {
+    this(width, height, new KruskalGenerator());
+  }
+
+  LightEngine(int width, int height, SpanningTreeGenerator generator) {
+    this(new BoardStore(width, height), generator);
+
+    // Generate the board with connections and random rotations
+    this.generateBoard();
+  }
+
+  // Play the given board as it is, without generating a new one or updating its power
+  LightEngine(BoardStore store, SpanningTreeGenerator generator) {
+    this.width = store.width;
+    this.height = store.height;
+    this.powerRow = 0;
+    this.powerCol = 0;
+    this.store = store;
+    this.traversal = new Traversal(store.size());
+    this.tree = new long[0];
+    this.reseed(new Random().nextLong());
+    this.tick = 0;
+    this.score = 0;
+    this.allPowered = false;
+    this.incrementalPower = true;
+    this.batchInput = false;
+    this.powerStale = false;
+    this.staleTile = -1;
+    this.generator = generator;
+  }
+
+  // Record every move of this game from now on in the given journal, starting from a
+  // checkpoint of the board as it is
+  // EFFECT: change the journal of this game, and take a checkpoint in it
+  public void record(MoveJournal journal) {
+    this.journal = journal;
+    journal.checkpoint(this);
+  }
+
+  // Keep every version of the board from now on, so moves can be undone and redone
+  // EFFECT: change the history of this game to start at the board as it is
+  public void keepHistory() {
+    this.history = new BoardHistory(this);
+  }
+
+  // Undo the last move that was not undone yet, and tell if there was one
+  // EFFECT: change the wires, the power station and the power state back
+  public boolean undo() {
+    if (this.history == null || !this.history.canUndo()) {
+      return false;
+    }
+    this.travel(-1);
+    return true;
+  }
+
+  // Redo the last move that was undone, and tell if there was one
+  // EFFECT: change the wires, the power station and the power state forward
+  public boolean redo() {
+    if (this.history == null || !this.history.canRedo()) {
+      return false;
+    }
+    this.travel(1);
+    return true;
+  }
+
+  // Turn the board to the version the given number of versions away in its history, and
+  // update the power status unless input is batched
+  // EFFECT: change the wires, the power station and the power state of the board
+  public void travel(int steps) {
+    this.history.go(steps, this);
+    this.powerStale = true;
+    this.staleTile = -1;
+    if (this.journal != null) {
+      this.journal.traveled(this);
+    }
+    if (!this.batchInput) {
+      this.updatePower();
+    }
+  }
+
+  // Start the random numbers behind new boards over from the given seed
+  // EFFECT: change the random numbers and the seed of this engine
+  public void reseed(long seed) {
+    this.seed = seed;
+    this.rand = new Random(seed);
+  }
+
+  // Get the tile index of the power station
+  int station() {
+    return this.store.index(this.powerCol, this.powerRow);
+  }
+
+  // Reset the game
+  // EFFECT: change the power row, column, tick, score, allPowered field and generate a new board
+  public void resetGame() {
+    // Reset the power station position to top-left
+    this.powerRow = 0;
+    this.powerCol = 0;
+    this.tick = 0;
+    this.score = 0;
+    this.allPowered = false;
+    this.generateBoard();
+  }
+
+  // Move the power station by the given key, if the wires between it and the tile
+  // in that direction are connected
+  // EFFECT: change this power column and this power row
+  public void movePowerStation(String key) {
+    int wire = 0;
+    if (key.equals("left")) {
+      wire = BoardStore.LEFT;
+    }
+    else if (key.equals("right")) {
+      wire = BoardStore.RIGHT;
+    }
+    else if (key.equals("up")) {
+      wire = BoardStore.TOP;
+    }
+    else if (key.equals("down")) {
+      wire = BoardStore.BOTTOM;
+    }
+    this.movePowerStation(wire);
+  }
+
+  // Move the power station across the given wire bit, if the wires between it and the tile
+  // in that direction are connected, and update the power status unless input is batched
+  // EFFECT: change this power column and this power row, and the power state of the board
+  public void movePowerStation(int wire) {
+    StationMoveEvent event = new StationMoveEvent();
+    event.begin();
+    int station = this.station();
+    if ((this.store.links(station) & wire) != 0) {
+      int next = this.store.neighbor(station, wire);
+      this.store.setStation(station, false);
+      this.powerRow = next % this.width;
+      this.powerCol = next / this.width;
+      this.score++;
+      this.powerStale = true;
+      this.staleTile = -1;
+      if (this.journal != null) {
+        this.journal.moved(wire, this);
+      }
+      if (this.history != null) {
+        this.history.moved(this);
+      }
+      if (!this.batchInput) {
+        this.updatePower();
+      }
+      event.finish(station, next, wire, this.score);
+    }
+  }
+
+  // Advance the time of the game by one tick, unless the game is won
+  // EFFECT: change the value of the tick field, and evaluate a stale power state
+  public void advanceTime() {
+    if (!this.isAllPowered()) {
+      this.tick++;
+    }
+  }
+
+  // Rotate the tile at the given row and column, and update the power status unless input
+  // is batched
+  // EFFECT: change the wires of the tile, the score and the power state of the board
+  public void rotate(int row, int col) {
+    this.rotateTile(this.store.index(row, col));
+  }
+
+  // Rotate the tile at the given index, and update the power status unless input is batched
+  // EFFECT: change the wires of the tile, the score and the power state of the board
+  public void rotateTile(int index) {
+    RotationEvent event = new RotationEvent();
+    event.begin();
+    int oldMask = this.store.wires(index);
+    this.store.rotate(index);
+    this.score++;
+    if (this.journal != null) {
+      this.journal.rotated(index, this);
+    }
+    if (this.history != null) {
+      this.history.rotated(index, this);
+    }
+
+    // Turning one tile again and again still only changes that tile since the last update
+    if (!this.powerStale) {
+      this.powerStale = true;
+      this.staleTile = index;
+      this.staleMask = oldMask;
+    }
+    else if (this.staleTile != index) {
+      this.staleTile = -1;
+    }
+    if (!this.batchInput) {
+      this.refreshPower();
+    }
+    event.finish(index, oldMask, this.store.wires(index), this.score);
+  }
+
+  // Bring a stale power state up to date, only repairing around the changed tile
+  // when a single tile changed since the last update
+  // EFFECT: change the power state of the board
+  public void refreshPower() {
+    if (!this.powerStale) {
+      return;
+    }
+    if (this.staleTile != -1 && this.incrementalPower) {
+      this.repairPower(this.staleTile, this.staleMask);
+    }
+    else {
+      this.updatePower();
+    }
+  }
+
+  // Check whether all the tiles on the board are powered, bringing a stale power state
+  // up to date first
+  // EFFECT: change the power state of the board if it is stale
+  public boolean isAllPowered() {
+    this.refreshPower();
+    return this.allPowered;
+  }
+
+  // Update the power status of all tiles, overwriting the old state in place so that only
+  // the tiles whose power or distance differ are marked as changed
+  // EFFECT: change the powered state and distance of every tile on this board
+  public void updatePower() {
+    PhaseEvent event = new PhaseEvent();
+    event.begin();
+    BoardStore store = this.store;
+    Traversal bfs = this.traversal;
+
+    int powerSource = this.station();
+
+    store.setStation(powerSource, true);
+    store.setPowered(powerSource, true);
+    store.setDistance(powerSource, 0);
+
+    bfs.start(store.size());
+    bfs.mark(powerSource);
+    bfs.add(powerSource);
+
+    while (!bfs.isEmpty()) {
+      int current = bfs.remove();
+
+      for (int links = store.links(current); links != 0; links &= links - 1) {
+        int neighbor = current + store.offsets[links & -links];
+        if (bfs.mark(neighbor)) {
+          int distance = store.distance(current) + 1;
+          store.setDistance(neighbor, distance);
+          store.setPowered(neighbor, distance <= this.radius);
+          bfs.add(neighbor);
+        }
+      }
+    }
+
+    // Every tile the power station does not reach is unpowered
+    if (bfs.marked < store.size()) {
+      for (int tile = 0; tile < store.size(); tile++) {
+        if (!bfs.isMarked(tile)) {
+          store.setDistance(tile, -1);
+          store.setPowered(tile, false);
+        }
+      }
+    }
+
+    this.allPowered = this.allPowered();
+    this.powerStale = false;
+    event.finish("updatePower", this.width, this.height, bfs.marked, bfs.peak);
+  }
+
+  // Repair the power status after the wires of the tile at the given index changed from
+  // the given mask, re-traversing only the tiles cut off from, or newly attached to,
+  // the power station
+  // EFFECT: change the distance and powered state of the affected tiles on this board
+  public void repairPower(int origin, int oldMask) {
+    PhaseEvent event = new PhaseEvent();
+    event.begin();
+    BoardStore store = this.store;
+    Traversal bfs = this.traversal;
+    bfs.start(store.size());
+
+    // Every tile below a lost edge may have lost its shortest path
+    for (int wire = BoardStore.LEFT; wire <= BoardStore.BOTTOM; wire <<= 1) {
+      int other = store.neighbor(origin, wire);
+      if (other != -1 && (oldMask & wire) != 0
+              && store.hasWire(other, BoardStore.opposite(wire))
+              && !store.connected(origin, wire)) {
+        int lower = origin;
+        if (store.distance(other) == store.distance(origin) + 1) {
+          lower = other;
+        }
+        if (store.distance(lower) > 0 && bfs.mark(lower)) {
+          bfs.collect(lower);
+        }
+      }
+    }
+
+    // Collect the region hanging below the lost edges, using the old distances
+    for (int i = 0; i < bfs.foundCount; i++) {
+      int current = bfs.found[i];
+      for (int links = store.links(current); links != 0; links &= links - 1) {
+        int other = current + store.offsets[links & -links];
+        if (store.distance(other) == store.distance(current) + 1 && bfs.mark(other)) {
+          bfs.collect(other);
+        }
+      }
+    }
+    for (int i = 0; i < bfs.foundCount; i++) {
+      store.setDistance(bfs.found[i], -1);
+    }
+
+    // Reattach each cut tile, and the changed tile, through its best reached neighbor
+    if (!bfs.isMarked(origin)) {
+      bfs.collect(origin);
+    }
+    for (int i = 0; i < bfs.foundCount; i++) {
+      int tile = bfs.found[i];
+      int best = store.distance(tile);
+      for (int links = store.links(tile); links != 0; links &= links - 1) {
+        int distance = store.distance(tile + store.offsets[links & -links]);
+        if (distance != -1 && (best == -1 || distance + 1 < best)) {
+          best = distance + 1;
+        }
+      }
+      if (best != -1) {
+        store.setDistance(tile, best);
+        bfs.collectKey(best, tile);
+      }
+    }
+    bfs.sortKeys();
+
+    // Relax outwards in order of distance, merging the sorted seeds with the queue
+    int next = 0;
+    while (next < bfs.keyCount || !bfs.isEmpty()) {
+      int current;
+      if (bfs.isEmpty() || (next < bfs.keyCount
+              && store.distance(bfs.keyTile(next)) <= store.distance(bfs.peek()))) {
+        current = bfs.keyTile(next);
+        next++;
+      }
+      else {
+        current = bfs.remove();
+      }
+      for (int links = store.links(current); links != 0; links &= links - 1) {
+        int other = current + store.offsets[links & -links];
+        int distance = store.distance(other);
+        if (distance == -1 || store.distance(current) + 1 < distance) {
+          store.setDistance(other, store.distance(current) + 1);
+          bfs.add(other);
+          bfs.collect(other);
+        }
+      }
+    }
+
+    // Patch the powered state of every tile whose distance may have changed
+    for (int i = 0; i < bfs.foundCount; i++) {
+      int distance = store.distance(bfs.found[i]);
+      store.setPowered(bfs.found[i], distance != -1 && distance <= this.radius);
+    }
+
+    this.allPowered = this.allPowered();
+    this.powerStale = false;
+    event.finish("repairPower", this.width, this.height, bfs.foundCount, bfs.peak);
+  }
+
+  // Solve the board from the current wires of its tiles, and return the solver used
+  // EFFECT: if a solution was found, turn every tile to it and update the power status
+  public BoardSolver solve() {
+    BoardSolver solver = new BoardSolver(this.store);
+    if (solver.solve()) {
+      solver.apply();
+      this.updatePower();
+      if (this.journal != null) {
+        this.journal.checkpoint(this);
+      }
+      if (this.history != null) {
+        this.history.add(WireTrie.of(this.store), this.station());
+      }
+    }
+    return solver;
+  }
+
+  // Solve the board in parallel on the common fork-join pool, and return the solver used
+  // EFFECT: if a solution was found, turn every tile to it and update the power status
+  public ParallelBoardSolver solveInParallel() {
+    ParallelBoardSolver solver = new ParallelBoardSolver(this.store);
+    if (solver.solve()) {
+      solver.apply();
+      this.updatePower();
+      if (this.journal != null) {
+        this.journal.checkpoint(this);
+      }
+      if (this.history != null) {
+        this.history.add(WireTrie.of(this.store), this.station());
+      }
+    }
+    return solver;
+  }
+
+  // Rate how hard the board is to solve from the current wires of its tiles and the place
+  // of the power station
+  public DifficultyRating rateDifficulty() {
+    return DifficultyRating.rate(this.store, this.radius, this.station());
+  }
+
+  // Updated method that handles board generation
+  // EFFECT: mutate the store and MST
+  public void generateBoard() {
+    PhaseEvent event = new PhaseEvent();
+    event.begin();
+
+    // Initialize an empty board
+    this.initializeEmptyBoard();
+
+    // Generate MST and set connections
+    this.generateConnectionsFromMST();
+
+    // Set radius based on the diameter of the tree just built
+    this.radius = this.treeDiameter() / 2 + 1;
+
+    // Randomly rotate each tile
+    this.randomizeRotations();
+
+    // Set power station and update power
+    this.store.setStation(this.station(), true);
+    this.updatePower();
+
+    // A new board starts from a checkpoint and a history of its own
+    if (this.journal != null) {
+      this.journal.checkpoint(this);
+    }
+    if (this.history != null) {
+      this.keepHistory();
+    }
+    event.finish("generateBoard", this.width, this.height, this.store.size(), 0);
+  }
+
+  // Initialize an empty board
+  // EFFECT: mutate the store and MST to default
+  public void initializeEmptyBoard() {
+    this.store = new BoardStore(this.width, this.height);
+    this.tree = new long[0];
+    this.powerStale = false;
+  }
+
+  // Generates connections using the spanning tree of this generator
+  // EFFECT: mutate this MST and set connections
+  public void generateConnectionsFromMST() {
+    this.tree = this.generator.generate(this.store, this.rand);
+
+    // Set the connections based on MST edges
+    this.setConnectionsFromMST();
+  }
+
+  // Generates all possible edges between adjacent tiles with random weights,
+  // packed as weight and edge id
+  public long[] generateAllPossibleEdges() {
+    return new KruskalGenerator().generateAllPossibleEdges(this.store, this.rand);
+  }
+
+  // Sorts the given packed edges by weight, in time linear in the number of edges
+  public long[] sortEdges(long[] edges) {
+    return new KruskalGenerator().sortEdges(edges);
+  }
+
+  // Applies Kruskal's algorithm to find the minimum spanning tree
+  public long[] buildMinimumSpanningTree(long[] edges) {
+    return new KruskalGenerator().buildMinimumSpanningTree(this.store, edges);
+  }
+
+  // Sets connections between tiles based on MST edges
+  // EFFECT: mutate the tiles' wire masks
+  public void setConnectionsFromMST() {
+    for (long edge : this.tree) {
+      this.store.connectEdge(Edge.idOf(edge));
+    }
+  }
+
+  // Randomly rotate each tile on the board
+  // EFFECT: mutate the tiles' wire masks
+  public void randomizeRotations() {
+    this.generator.randomizeRotations(this.store, this.rand);
+  }
+
+  // Check whether all the tiles on the board are powered, from the count of powered tiles
+  public boolean allPowered() {
+    return this.store.poweredCount == this.store.size();
+  }
+
+  // Get the number of tiles on the board that are powered, bringing a stale power state
+  // up to date first
+  // EFFECT: change the power state of the board if it is stale
+  public int poweredTiles() {
+    this.refreshPower();
+    return this.store.poweredCount;
+  }
+
+  // Get the percentage of the tiles on the board that are powered, rounded down so that
+  // only a won board is 100% lit, bringing a stale power state up to date first
+  // EFFECT: change the power state of the board if it is stale
+  public int percentLit() {
+    return (int) (this.poweredTiles() * 100L / this.store.size());
+  }
+
+  // Calculate the diameter of this board
+  public int calculateDiameter() {
+    PhaseEvent event = new PhaseEvent();
+    event.begin();
+    Traversal bfs = this.traversal;
+    int firstBFSend = this.findFurthestNode(this.station());
+    int visited = bfs.marked;
+    int peak = bfs.peak;
+    int secondBFSend = this.findFurthestNode(firstBFSend);
+    event.finish("calculateDiameter", this.width, this.height, visited + bfs.marked,
+            Math.max(peak, bfs.peak));
+
+    // The furthest distance from one end of a longest path is the diameter
+    return this.store.distance(secondBFSend);
+  }
+
+  // Calculate the diameter of the spanning tree of this board in one pass over its edges,
+  // peeling leaves off the tree while keeping the height of the peeled branches under every
+  // tile, without touching the distances of the tiles
+  public int treeDiameter() {
+    BoardStore store = this.store;
+    int size = store.size();
+    byte[] degree = new byte[size];
+    // the xor of the neighbors of every tile that are not peeled yet,
+    // which is its only neighbor once it is a leaf
+    int[] neighbors = new int[size];
+    int[] height = new int[size];
+    for (long edge : this.tree) {
+      int id = Edge.idOf(edge);
+      int from = store.edgeFrom(id);
+      int to = store.edgeTo(id);
+      degree[from]++;
+      degree[to]++;
+      neighbors[from] ^= to;
+      neighbors[to] ^= from;
+    }
+
+    int[] leaves = new int[size];
+    int leafCount = 0;
+    for (int tile = 0; tile < size; tile++) {
+      if (degree[tile] == 1) {
+        leaves[leafCount] = tile;
+        leafCount++;
+      }
+    }
+
+    int diameter = 0;
+    while (leafCount > 0) {
+      leafCount--;
+      int leaf = leaves[leafCount];
+      // The last tile of the tree has nothing left to join
+      if (degree[leaf] == 0) {
+        continue;
+      }
+      int next = neighbors[leaf];
+      // The longest path through the next tile joins its tallest branches
+      diameter = Math.max(diameter, height[next] + height[leaf] + 1);
+      height[next] = Math.max(height[next], height[leaf] + 1);
+      degree[leaf] = 0;
+      degree[next]--;
+      neighbors[next] ^= leaf;
+      if (degree[next] == 1) {
+        leaves[leafCount] = next;
+        leafCount++;
+      }
+    }
+    return diameter;
+  }
+
+  // Breath first search to find the index of the farthest tile from the given one
+  // EFFECT: mutate the distance from power station for all tiles in this board
+  public int findFurthestNode(int start) {
+    BoardStore store = this.store;
+    Traversal bfs = this.traversal;
+    store.clearDistances();
+
+    bfs.start(store.size());
+    store.setDistance(start, 0);
+    bfs.mark(start);
+    bfs.add(start);
+    int furthest = start;
+
+    while (!bfs.isEmpty()) {
+      int current = bfs.remove();
+
+      for (int links = store.links(current); links != 0; links &= links - 1) {
+        int neighbor = current + store.offsets[links & -links];
+        if (bfs.mark(neighbor)) {
+          store.setDistance(neighbor, store.distance(current) + 1);
+          bfs.add(neighbor);
+
+          if (store.distance(neighbor) > store.distance(furthest)) {
+            furthest = neighbor;
+          }
+        }
+      }
+    }
+
+    return furthest;
+  }
+}
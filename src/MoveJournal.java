@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Represents an append-only journal of the moves of a game, that can replay the game to the
+// state after any of its moves. The journal is the magic "LEMJ" and a version byte, followed
+// by records that each start with a varint whose low 2 bits tell what it records:
+//   0  a rotation, of the tile whose index is the rest of the varint
+//   1  a move of the power station, across the wire 1 << the rest of the varint
+//   2  a checkpoint, a board snapshot of the length in the rest of the varint
+//   3  an undo or redo, a board snapshot of the length in the rest of the varint
+// Only moves that changed the game are recorded, so the number of a move is the number of
+// rotations, moves, undos and redos before and including it, and a checkpoint of the whole
+// board is taken every few moves and on every new board, so a replay only has a short tail
+// to play. An undo or redo is its own snapshot, so it never shares a number with the move
+// before it, and version 1 journals, which have none, are still read
+class MoveJournal {
+  static final int MAGIC = 0x4C454D4A;
+  static final byte VERSION = 2;
+  static final int HEADER_BYTES = 5;
+  static final int ROTATE = 0;
+  static final int MOVE = 1;
+  static final int CHECKPOINT = 2;
+  static final int TRAVEL = 3;
+
+  // the number of moves between two checkpoints
+  int interval;
+  // the bytes of the journal, and the number of them in use
+  byte[] bytes;
+  int length;
+  // the number of bytes already appended to a file
+  int written;
+  // the number of moves recorded
+  long moves;
+  // the move count and the offset of the record of every checkpoint, in order
+  long[] checkpointMoves;
+  int[] checkpointOffsets;
+  int checkpoints;
+
+  // Start an empty journal, taking a checkpoint every given number of moves
+  MoveJournal(int interval) {
+    if (interval < 1) {
+      throw new IllegalArgumentException("checkpoint interval " + interval + " is not positive");
+    }
+    this.interval = interval;
+    this.bytes = new byte[256];
+    this.checkpointMoves = new long[16];
+    this.checkpointOffsets = new int[16];
+    ByteBuffer.wrap(this.bytes).putInt(MAGIC).put(VERSION);
+    this.length = HEADER_BYTES;
+  }
+
+  // Record the rotation of the tile at the given index of the given game
+  // EFFECT: append the rotation, and a checkpoint if one is due
+  void rotated(int tile, LightEngine engine) {
+    this.putVarint(((long) tile << 2) | ROTATE);
+    this.recorded(engine);
+  }
+
+  // Record a move of the power station of the given game across the given wire bit
+  // EFFECT: append the move, and a checkpoint if one is due
+  void moved(int wire, LightEngine engine) {
+    this.putVarint((Integer.numberOfTrailingZeros(wire) << 2) | MOVE);
+    this.recorded(engine);
+  }
+
+  // Count a move just recorded, and take a checkpoint of the given game if one is due
+  // EFFECT: change the number of moves, and append a checkpoint if one is due
+  void recorded(LightEngine engine) {
+    this.moves++;
+    if (this.moves % this.interval == 0) {
+      this.checkpoint(engine);
+    }
+  }
+
+  // Record an undo or redo of the given game, which turned its board to another version
+  // EFFECT: count the move, and append a snapshot of the board after it
+  void traveled(LightEngine engine) {
+    this.moves++;
+    this.snapshot(engine, TRAVEL);
+  }
+
+  // Record a snapshot of the whole board of the given game
+  // EFFECT: append the checkpoint, and index it
+  void checkpoint(LightEngine engine) {
+    this.snapshot(engine, CHECKPOINT);
+  }
+
+  // Record a snapshot of the whole board of the given game, as the given kind of record
+  // EFFECT: append the snapshot, and index it as a checkpoint
+  void snapshot(LightEngine engine, int kind) {
+    int size = (int) BoardSnapshot.bytes(engine.store.size());
+    this.index(this.length);
+    this.putVarint(((long) size << 2) | kind);
+    this.reserve(size);
+    BoardSnapshot.write(engine, ByteBuffer.wrap(this.bytes, this.length, size));
+    this.length += size;
+  }
+
+  // Index a checkpoint at the given offset, taken after the moves recorded so far
+  // EFFECT: add the checkpoint to the index of this journal
+  void index(int offset) {
+    if (this.checkpoints == this.checkpointMoves.length) {
+      this.checkpointMoves = Arrays.copyOf(this.checkpointMoves, this.checkpoints * 2);
+      this.checkpointOffsets = Arrays.copyOf(this.checkpointOffsets, this.checkpoints * 2);
+    }
+    this.checkpointMoves[this.checkpoints] = this.moves;
+    this.checkpointOffsets[this.checkpoints] = offset;
+    this.checkpoints++;
+  }
+
+  // Replay the game to the state after the given number of moves, or after its last move,
+  // from the last checkpoint taken before it
+  LightEngine replay(long move) throws IOException {
+    move = Math.min(move, this.moves);
+    int low = 0;
+    int high = this.checkpoints;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (this.checkpointMoves[middle] <= move) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    if (low == 0) {
+      throw new IOException("no checkpoint before move " + move);
+    }
+
+    byte[] bytes = this.bytes;
+    int offset = this.checkpointOffsets[low - 1];
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      value |= (long) (bytes[offset] & 0x7F) << shift;
+      offset++;
+      if (bytes[offset - 1] >= 0) {
+        break;
+      }
+    }
+    int size = (int) (value >>> 2);
+    LightEngine engine = BoardSnapshot.read(ByteBuffer.wrap(bytes, offset, size));
+    offset += size;
+
+    // Play the tail with the power state evaluated once at the end
+    engine.batchInput = true;
+    int tiles = engine.store.size();
+    for (long played = this.checkpointMoves[low - 1]; played < move; played++) {
+      value = 0;
+      for (int shift = 0; ; shift += 7) {
+        value |= (long) (bytes[offset] & 0x7F) << shift;
+        offset++;
+        if (bytes[offset - 1] >= 0) {
+          break;
+        }
+      }
+      int score = engine.score;
+      long argument = value >>> 2;
+      if ((value & 3) == ROTATE && argument < tiles) {
+        engine.rotateTile((int) argument);
+      }
+      else if ((value & 3) == MOVE && argument < 4) {
+        engine.movePowerStation(1 << argument);
+      }
+      if (engine.score != score + 1) {
+        throw new IOException("corrupt move journal");
+      }
+    }
+    engine.batchInput = false;
+    engine.refreshPower();
+    return engine;
+  }
+
+  // Append the given value as a varint, 7 bits per byte from the lowest
+  // EFFECT: change the bytes of this journal
+  void putVarint(long value) {
+    this.reserve(10);
+    while ((value & ~0x7FL) != 0) {
+      this.bytes[this.length] = (byte) ((value & 0x7F) | 0x80);
+      this.length++;
+      value >>>= 7;
+    }
+    this.bytes[this.length] = (byte) value;
+    this.length++;
+  }
+
+  // Make room for the given number of bytes more
+  // EFFECT: grow the bytes of this journal if they are too few
+  void reserve(int count) {
+    if (this.length + count > this.bytes.length) {
+      int capacity = Math.max(this.bytes.length * 2, this.length + count);
+      this.bytes = Arrays.copyOf(this.bytes, capacity);
+    }
+  }
+
+  // Append the bytes of this journal not yet written to the given file channel
+  // EFFECT: write to the channel, and remember how much of the journal is written
+  void appendTo(FileChannel channel) throws IOException {
+    ByteBuffer tail = ByteBuffer.wrap(this.bytes, this.written, this.length - this.written);
+    while (tail.hasRemaining()) {
+      channel.write(tail);
+    }
+    this.written = this.length;
+  }
+
+  // Read the journal in the file at the given path, checkpointing every given number of
+  // moves as it grows
+  static MoveJournal read(Path path, int interval) throws IOException {
+    byte[] bytes = Files.readAllBytes(path);
+    MoveJournal journal = new MoveJournal(interval);
+    if (bytes.length < HEADER_BYTES || ByteBuffer.wrap(bytes).getInt() != MAGIC
+            || bytes[4] < 1 || bytes[4] > VERSION) {
+      throw new IOException("not a move journal");
+    }
+    journal.bytes = bytes;
+    journal.written = bytes.length;
+
+    // Index the checkpoints and count the moves
+    int offset = HEADER_BYTES;
+    while (offset < bytes.length) {
+      int start = offset;
+      long value = 0;
+      int shift = 0;
+      do {
+        if (offset == bytes.length || shift > 56) {
+          throw new IOException("corrupt move journal");
+        }
+        value |= (long) (bytes[offset] & 0x7F) << shift;
+        shift += 7;
+        offset++;
+      } while (bytes[offset - 1] < 0);
+      if ((value & 3) == CHECKPOINT || (value & 3) == TRAVEL) {
+        if ((value & 3) == TRAVEL) {
+          journal.moves++;
+        }
+        journal.index(start);
+        offset += (int) (value >>> 2);
+        if (offset > bytes.length) {
+          throw new IOException("corrupt move journal");
+        }
+      }
+      else {
+        journal.moves++;
+      }
+    }
+    journal.length = bytes.length;
+    if (journal.checkpoints == 0) {
+      throw new IOException("corrupt move journal");
+    }
+    return journal;
+  }
+}
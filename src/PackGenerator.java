@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// Represents an offline pipeline generating packs of puzzles of one size on every core.
+// The seed of every board is drawn in order from the seed of the pack, batches of boards
+// are generated in parallel, and each batch is then kept in order, dropping every board
+// whose solution was already kept, so the same seed always makes the same pack
+class PackGenerator {
+  // the number of boards in a batch, and in the stripe of a batch one task generates
+  static final int BATCH = 4096;
+  static final int STRIPE = 64;
+
+  ForkJoinPool pool;
+  int width;
+  int height;
+  // the seeds of the boards, in order
+  SplittableRandom seeds;
+  // the hashes of the solutions kept so far, in an open-addressing table where 0 is empty
+  long[] seen;
+  int seenCount;
+  // the number of boards generated and dropped as duplicates, and the time it took
+  long generated;
+  long duplicates;
+  long nanos;
+  // where the progress is reported every second, or null if it is not
+  PrintStream log;
+
+  // Generate puzzles of the given size from the given seed, on the pool shared by
+  // everything running on the given number of threads
+  PackGenerator(int width, int height, long seed, int parallelism) {
+    this.pool = StripeTask.pool(parallelism);
+    this.width = width;
+    this.height = height;
+    this.seeds = new SplittableRandom(seed);
+    this.seen = new long[1024];
+  }
+
+  // Generate a pack of puzzles from the command line:
+  //   PackGenerator <pack file> <count> [width height [seed [threads]]]
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.out.println(
+              "usage: PackGenerator <pack file> <count> [width height [seed [threads]]]");
+      return;
+    }
+    int count = Integer.parseInt(args[1]);
+    int width = args.length > 3 ? Integer.parseInt(args[2]) : 10;
+    int height = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+    int threads = args.length > 5 ? Integer.parseInt(args[5])
+            : Runtime.getRuntime().availableProcessors();
+
+    PackGenerator generator = new PackGenerator(width, height, seed, threads);
+    generator.log = System.out;
+    PuzzlePack pack = PuzzlePack.create(Paths.get(args[0]), width, height, seed);
+    try {
+      generator.fill(pack, count);
+    }
+    finally {
+      pack.close();
+    }
+    System.out.println(generator.report(pack.count));
+  }
+
+  // Generate puzzles into the given pack until it holds the given number of them, or a
+  // whole batch finds no new solution
+  // EFFECT: append the puzzles to the pack, and count the boards generated and dropped
+  void fill(PuzzlePack pack, int count) throws IOException {
+    long start = System.nanoTime();
+    long reported = start;
+    int recordBytes = pack.recordBytes;
+    long[] boardSeeds = new long[BATCH];
+    long[] hashes = new long[BATCH];
+    ByteBuffer records = ByteBuffer.allocate(BATCH * recordBytes);
+    ByteBuffer kept = ByteBuffer.allocate(BATCH * recordBytes);
+
+    while (pack.count < count) {
+      for (int i = 0; i < BATCH; i++) {
+        boardSeeds[i] = this.seeds.nextLong();
+      }
+      this.pool.invoke(new StripeTask(0, BATCH / STRIPE,
+              stripe -> this.generateStripe(stripe, boardSeeds, hashes, records, recordBytes)));
+
+      // Keep the boards of the batch in order, up to the number asked for
+      kept.clear();
+      for (int i = 0; i < BATCH && pack.count + kept.position() / recordBytes < count; i++) {
+        this.generated++;
+        if (this.add(hashes[i])) {
+          kept.put(records.array(), i * recordBytes, recordBytes);
+        }
+        else {
+          this.duplicates++;
+        }
+      }
+      kept.flip();
+      // A whole batch of duplicates means the board has hardly any solutions left to find
+      if (!kept.hasRemaining()) {
+        break;
+      }
+      pack.append(kept);
+
+      long now = System.nanoTime();
+      if (this.log != null && now - reported >= 1000000000L) {
+        this.nanos = now - start;
+        this.log.println(this.report(pack.count));
+        reported = now;
+      }
+    }
+    this.nanos = System.nanoTime() - start;
+  }
+
+  // Generate the boards of the given stripe of a batch from their seeds, writing their
+  // records and the hashes of their solutions
+  // EFFECT: change the records and hashes of the boards of the stripe
+  void generateStripe(int stripe, long[] boardSeeds, long[] hashes, ByteBuffer records,
+                      int recordBytes) {
+    LightEngine engine =
+            new LightEngine(new BoardStore(this.width, this.height), new KruskalGenerator());
+    ByteBuffer record = records.duplicate();
+    for (int board = stripe * STRIPE; board < (stripe + 1) * STRIPE; board++) {
+      engine.reseed(boardSeeds[board]);
+      engine.initializeEmptyBoard();
+      engine.generateConnectionsFromMST();
+      int diameter = engine.treeDiameter();
+      engine.radius = diameter / 2 + 1;
+      hashes[board] = hash(engine.store);
+      engine.randomizeRotations();
+
+      record.position(board * recordBytes);
+      record.putLong(hashes[board]);
+      record.putInt(diameter);
+      BoardSnapshot.write(engine, record);
+    }
+  }
+
+  // Hash the wires of every tile of the given board, 16 tiles at a time, never to 0
+  static long hash(BoardStore store) {
+    long hash = store.width * 0x9E3779B97F4A7C15L + store.height;
+    long word = 0;
+    for (int tile = 0; tile < store.size(); tile++) {
+      word = (word << 4) | store.wires(tile);
+      if ((tile & 15) == 15 || tile == store.size() - 1) {
+        hash = mix(hash ^ word);
+        word = 0;
+      }
+    }
+    return hash == 0 ? 1 : hash;
+  }
+
+  // Scramble the bits of the given value, with the finalizer of SplitMix64
+  static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+    value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+    return value ^ (value >>> 31);
+  }
+
+  // Add the given hash of a solution to the solutions kept, and tell if it was not kept yet
+  // EFFECT: add the hash to the table, growing it when it is half full
+  boolean add(long hash) {
+    if (this.seenCount * 2 >= this.seen.length) {
+      long[] old = this.seen;
+      this.seen = new long[old.length * 2];
+      this.seenCount = 0;
+      for (long kept : old) {
+        if (kept != 0) {
+          this.add(kept);
+        }
+      }
+    }
+    int mask = this.seen.length - 1;
+    for (int slot = (int) mix(hash) & mask; ; slot = (slot + 1) & mask) {
+      if (this.seen[slot] == hash) {
+        return false;
+      }
+      if (this.seen[slot] == 0) {
+        this.seen[slot] = hash;
+        this.seenCount++;
+        return true;
+      }
+    }
+  }
+
+  // Describe how many boards were generated, kept and dropped, and how fast
+  String report(int kept) {
+    double seconds = Math.max(1, this.nanos) / 1e9;
+    long perSecond = (long) (this.generated / seconds);
+    return "generated " + this.generated + " boards, kept " + kept + ", dropped "
+            + this.duplicates + " duplicates in " + (this.nanos / 1000000) + " ms: "
+            + perSecond + " boards/s, " + (perSecond / this.pool.getParallelism())
+            + " boards/s per core";
+  }
+}
@@ -0,0 +1,188 @@
+import java.util.concurrent.ForkJoinPool;
+
+// Represents a solver for very large boards, that cuts the board into regions of rows and
+// solves every region on its own on a fork-join pool, with the edges across region borders
+// left free, then stitches the regions together with one solver over the whole board.
+// The stitch starts from the options the regions kept and only probes the tiles near region
+// borders, trying every other tile at the solution of its region first and leaving the few
+// wrong ones to backtracking. Only when that runs out of search nodes does the stitch probe
+// every tile, which is a full solve of the board on one thread
+class ParallelBoardSolver {
+  // the number of rows in a region, fixed so that the solution does not depend on the threads
+  static final int REGION_ROWS = 16;
+  // the number of rows on each side of a region border whose tiles the stitch probes
+  static final int BORDER_ROWS = 2;
+
+  // the board being solved
+  BoardStore store;
+  ForkJoinPool pool;
+  // the solver over the whole board that stitches the regions together
+  BoardSolver solver;
+  // the options each tile kept when its region was propagated, and the option it has in
+  // the solution of its region
+  int[] domains;
+  int[] hints;
+  // the tiles far enough from region borders that the stitch trusts their hints
+  boolean[] trusted;
+  // the number of search nodes tried in all the regions, and the time the last solve took
+  long regionNodes;
+  long nanos;
+  // the time the stitch of the last solve took, and whether it had to probe every tile
+  // because trusting the solutions of the regions took too many search nodes
+  long stitchNanos;
+  boolean widened;
+
+  // Solves the given board on the common fork-join pool
+  ParallelBoardSolver(BoardStore store) {
+    this(store, ForkJoinPool.commonPool());
+  }
+
+  // Solves the given board on the pool shared by everything running on the given number
+  // of threads
+  ParallelBoardSolver(BoardStore store, int parallelism) {
+    this(store, StripeTask.pool(parallelism));
+  }
+
+  ParallelBoardSolver(BoardStore store, ForkJoinPool pool) {
+    this.store = store;
+    this.pool = pool;
+    this.solver = new BoardSolver(store);
+    this.domains = new int[store.size()];
+    this.hints = new int[store.size()];
+    this.trusted = new boolean[store.size()];
+    for (int tile = 0; tile < store.size(); tile++) {
+      this.trusted[tile] = !this.nearBorder(tile);
+    }
+  }
+
+  // Find rotations of every tile that make the board a spanning tree, and tell if there
+  // are any
+  // EFFECT: change the solution, search node counts and time of this solver
+  boolean solve() {
+    long start = System.nanoTime();
+    boolean solved = this.search();
+    this.nanos = System.nanoTime() - start;
+    return solved;
+  }
+
+  // Solve every region in parallel, then stitch their solutions together over the whole
+  // board, and tell if that found a solution
+  // EFFECT: change the state of this solver
+  boolean search() {
+    int regions = this.regions();
+    boolean[] solved = new boolean[regions];
+    long[] nodes = new long[regions];
+    this.pool.invoke(new StripeTask(0, regions, region -> {
+      BoardSolver part = this.regionSolver(region);
+      solved[region] = this.solveRegion(region, part);
+      nodes[region] = part.searchNodes;
+    }));
+
+    // A region without a solution is part of a board without one
+    this.regionNodes = 0;
+    boolean all = true;
+    for (int region = 0; region < regions; region++) {
+      this.regionNodes += nodes[region];
+      all = all && solved[region];
+    }
+    if (!all) {
+      return false;
+    }
+
+    // Only the choices near the borders of the regions are left to agree on
+    long start = System.nanoTime();
+    this.widened = false;
+    boolean stitched = this.stitch(true);
+    if (!stitched) {
+      this.widened = true;
+      stitched = this.stitch(false);
+    }
+    this.stitchNanos = System.nanoTime() - start;
+    return stitched;
+  }
+
+  // Stitch the solutions of the regions together over the whole board, trusting them away
+  // from region borders for at most one search node per tile if asked to, or else probing
+  // every tile the regions left a choice, and tell if that found a solution
+  // EFFECT: change the state of the solver over the whole board
+  boolean stitch(boolean trust) {
+    BoardSolver solver = this.solver;
+    solver.reset();
+    solver.hints = this.hints;
+    solver.trusted = null;
+    solver.nodeLimit = 0;
+    if (trust) {
+      solver.trusted = this.trusted;
+      solver.nodeLimit = this.store.size();
+    }
+    for (int tile = 0; tile < this.store.size(); tile++) {
+      if (!solver.restrict(tile, this.domains[tile])) {
+        return false;
+      }
+    }
+    return solver.propagate() && solver.decide();
+  }
+
+  // Check if the given tile is within BORDER_ROWS rows of a border between two regions
+  boolean nearBorder(int tile) {
+    int row = tile / this.store.width;
+    int offset = row % REGION_ROWS;
+    return (row >= REGION_ROWS && offset < BORDER_ROWS)
+            || (offset >= REGION_ROWS - BORDER_ROWS
+                && row - offset + REGION_ROWS < this.store.height);
+  }
+
+  // Get the number of regions of rows on the board
+  int regions() {
+    return (this.store.height + REGION_ROWS - 1) / REGION_ROWS;
+  }
+
+  // Make a solver for the given region, over a copy of the wires of its rows
+  BoardSolver regionSolver(int region) {
+    BoardStore store = this.store;
+    int top = region * REGION_ROWS;
+    int rows = Math.min(REGION_ROWS, store.height - top);
+    int first = store.index(top, 0);
+    BoardStore part = new BoardStore(store.width, rows);
+    for (int tile = 0; tile < part.size(); tile++) {
+      part.setWires(tile, store.wires(first + tile));
+    }
+    return new BoardSolver(part, top > 0, top + rows < store.height);
+  }
+
+  // Propagate and solve the given region with the given solver, and tell if it has a
+  // solution
+  // EFFECT: change the domains and hints of the tiles of the region
+  boolean solveRegion(int region, BoardSolver part) {
+    int first = this.store.index(region * REGION_ROWS, 0);
+    part.reset();
+    if (!part.propagate() || !part.settle()) {
+      return false;
+    }
+    for (int tile = 0; tile < part.size; tile++) {
+      this.domains[first + tile] = part.options[tile];
+    }
+    if (!part.decide()) {
+      return false;
+    }
+    for (int tile = 0; tile < part.size; tile++) {
+      this.hints[first + tile] = part.options[tile];
+    }
+    return true;
+  }
+
+  // Turn every tile of the board to its mask in the solution found
+  // EFFECT: change the wires of the board
+  void apply() {
+    this.solver.apply();
+  }
+
+  // Describe the size, time, threads and search node counts of the last solve
+  String report() {
+    return "solved " + this.store.size() + " tiles in " + (this.nanos / 1000000) + " ms on "
+            + this.pool.getParallelism() + " threads, " + this.regionNodes
+            + " region search nodes, " + this.solver.searchNodes + " stitch search nodes in "
+            + (this.stitchNanos / 1000000) + " ms"
+            + (this.widened ? " over every tile" : " near region borders");
+  }
+}
@@ -0,0 +1,186 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+// Generates a spanning tree with Boruvka's algorithm on a fork-join pool. The board is cut
+// into stripes of rows that each draw from their own SplittableRandom stream, split in order
+// from one seed, so the same seed gives the same board however many threads are used
+class ParallelBoruvkaGenerator implements SpanningTreeGenerator {
+  // the number of rows in a stripe, fixed so that the streams do not depend on the threads
+  static final int STRIPE_ROWS = 32;
+  // the marker of a component that found no edge out of it
+  static final long NO_EDGE = Long.MAX_VALUE;
+
+  ForkJoinPool pool;
+
+  // Generates on the common fork-join pool
+  ParallelBoruvkaGenerator() {
+    this.pool = ForkJoinPool.commonPool();
+  }
+
+  // Generates on the pool shared by everything running on the given number of threads
+  ParallelBoruvkaGenerator(int parallelism) {
+    this.pool = StripeTask.pool(parallelism);
+  }
+
+  // Generate the minimum spanning tree of the board under random weights, in rounds
+  // where every component joins its cheapest edge out of it
+  public long[] generate(BoardStore store, Random rand) {
+    int size = store.size();
+    int stripes = this.stripes(store);
+    SplittableRandom[] streams = this.streams(rand.nextLong(), stripes);
+
+    // Draw a random weight for every edge, packed with its id so that no two weights tie
+    long[] weights = new long[2 * size];
+    this.forEachStripe(stripes, stripe -> {
+      SplittableRandom random = streams[stripe];
+      for (int tile = this.firstTile(store, stripe); tile < this.endTile(store, stripe); tile++) {
+        weights[store.rightEdge(tile)] = NO_EDGE;
+        weights[store.bottomEdge(tile)] = NO_EDGE;
+        if (store.neighbor(tile, BoardStore.RIGHT) != -1) {
+          weights[store.rightEdge(tile)] =
+                  Edge.pack(random.nextInt(Integer.MAX_VALUE), store.rightEdge(tile));
+        }
+        if (store.neighbor(tile, BoardStore.BOTTOM) != -1) {
+          weights[store.bottomEdge(tile)] =
+                  Edge.pack(random.nextInt(Integer.MAX_VALUE), store.bottomEdge(tile));
+        }
+      }
+    });
+
+    long[] tree = new long[Math.max(0, size - 1)];
+    int count = 0;
+    UnionFind uf = new UnionFind(size);
+    int[] components = new int[size];
+    AtomicLongArray cheapest = new AtomicLongArray(size);
+    int[] roots = new int[size];
+    int rootCount = size;
+    for (int tile = 0; tile < size; tile++) {
+      components[tile] = tile;
+      roots[tile] = tile;
+    }
+
+    while (count < tree.length) {
+      for (int i = 0; i < rootCount; i++) {
+        cheapest.set(roots[i], NO_EDGE);
+      }
+
+      // Find the cheapest edge out of every component, in parallel over the stripes
+      this.forEachStripe(stripes, stripe -> {
+        for (int tile = this.firstTile(store, stripe); tile < this.endTile(store, stripe);
+             tile++) {
+          this.offer(store, cheapest, components, weights[store.rightEdge(tile)]);
+          this.offer(store, cheapest, components, weights[store.bottomEdge(tile)]);
+        }
+      });
+
+      // Join every component with its cheapest edge, in order of the component
+      int kept = 0;
+      for (int i = 0; i < rootCount; i++) {
+        long edge = cheapest.get(roots[i]);
+        int id = Edge.idOf(edge);
+        if (edge != NO_EDGE && uf.union(store.edgeFrom(id), store.edgeTo(id))) {
+          tree[count] = edge;
+          count++;
+        }
+      }
+      for (int i = 0; i < rootCount; i++) {
+        if (uf.find(roots[i]) == roots[i]) {
+          roots[kept] = roots[i];
+          kept++;
+        }
+      }
+      rootCount = kept;
+
+      // Relabel every tile with the root of its new component
+      this.forEachStripe(stripes, stripe -> {
+        for (int tile = this.firstTile(store, stripe); tile < this.endTile(store, stripe);
+             tile++) {
+          int root = tile;
+          while (uf.parent[root] != root) {
+            root = uf.parent[root];
+          }
+          components[tile] = root;
+        }
+      });
+    }
+    return tree;
+  }
+
+  // Rotate every tile a random number of quarter turns, each stripe drawing from its own stream
+  // EFFECT: change the wire mask of every tile, and mark every tile as changed
+  public void randomizeRotations(BoardStore store, Random rand) {
+    int stripes = this.stripes(store);
+    SplittableRandom[] streams = this.streams(rand.nextLong(), stripes);
+    this.forEachStripe(stripes, stripe -> {
+      SplittableRandom random = streams[stripe];
+      for (int tile = this.firstTile(store, stripe); tile < this.endTile(store, stripe); tile++) {
+        int rotations = random.nextInt(4);
+        // Write the tile straight into its own byte, since stripes share the words of the
+        // changed bitset where they meet
+        int mask = store.wires(tile);
+        mask = ((mask << rotations) | (mask >>> (4 - rotations))) & 0xF;
+        store.tiles[tile] = (byte) ((store.tiles[tile] & BoardStore.STATION) | mask);
+      }
+    });
+    store.changed.set(0, store.size());
+  }
+
+  // Offer the given packed edge to the components on both of its sides,
+  // if it joins two different components
+  // EFFECT: lower the cheapest edge of both components to the given edge
+  void offer(BoardStore store, AtomicLongArray cheapest, int[] components, long edge) {
+    if (edge == NO_EDGE) {
+      return;
+    }
+    int id = Edge.idOf(edge);
+    int from = components[store.edgeFrom(id)];
+    int to = components[store.edgeTo(id)];
+    if (from != to) {
+      this.lower(cheapest, from, edge);
+      this.lower(cheapest, to, edge);
+    }
+  }
+
+  // Lower the value at the given position of the given array to the given value
+  // EFFECT: change the value at the given position, if the given value is lower
+  void lower(AtomicLongArray values, int position, long value) {
+    long current = values.get(position);
+    while (value < current && !values.compareAndSet(position, current, value)) {
+      current = values.get(position);
+    }
+  }
+
+  // Get the number of stripes of rows on the given board
+  int stripes(BoardStore store) {
+    return (store.height + STRIPE_ROWS - 1) / STRIPE_ROWS;
+  }
+
+  // Get the index of the first tile of the given stripe
+  int firstTile(BoardStore store, int stripe) {
+    return stripe * STRIPE_ROWS * store.width;
+  }
+
+  // Get the index one past the last tile of the given stripe
+  int endTile(BoardStore store, int stripe) {
+    return Math.min(store.size(), (stripe + 1) * STRIPE_ROWS * store.width);
+  }
+
+  // Split the given number of random streams, in order, from one seeded stream
+  SplittableRandom[] streams(long seed, int count) {
+    SplittableRandom root = new SplittableRandom(seed);
+    SplittableRandom[] result = new SplittableRandom[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = root.split();
+    }
+    return result;
+  }
+
+  // Run the given action on every stripe, in parallel on this pool
+  // EFFECT: whatever the action does to each stripe
+  void forEachStripe(int stripes, IntConsumer action) {
+    this.pool.invoke(new StripeTask(0, stripes, action));
+  }
+}
@@ -0,0 +1,40 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Represents a Java Flight Recorder event timing one phase of the game on a board, such as
+// updating the power or drawing the scene, with how many tiles it visited and the most it
+// queued at once. When no recording enables it, begin and shouldCommit cost next to nothing
+// and the event is never filled in
+@Name("lightemall.Phase")
+@Label("Game Phase")
+@Category({"Light Em All", "Game"})
+@Description("Time spent in one phase of the game on a board")
+class PhaseEvent extends Event {
+  @Label("Phase")
+  String phase;
+  @Label("Width")
+  int width;
+  @Label("Height")
+  int height;
+  @Label("Tiles Visited")
+  int tilesVisited;
+  @Label("Queue High-Water Mark")
+  @Description("The most tiles waiting in the queue at once, or 0 if the phase has no queue")
+  int queuePeak;
+
+  // End the given phase over a board of the given size, and commit it if it is recorded
+  // EFFECT: fill in and commit this event if a recording enables it
+  void finish(String phase, int width, int height, int tilesVisited, int queuePeak) {
+    if (this.shouldCommit()) {
+      this.phase = phase;
+      this.width = width;
+      this.height = height;
+      this.tilesVisited = tilesVisited;
+      this.queuePeak = queuePeak;
+      this.commit();
+    }
+  }
+}
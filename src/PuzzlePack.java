@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Represents a pack file of pre-generated puzzles of one size, read and written through a
+// file channel. Every puzzle takes a record of the same length, so the record of any puzzle
+// id is found in constant time from its id alone:
+//   header: magic "LEMP", version (short), flags (short, 0), width, height, count,
+//           record length (ints), seed of the pack (long)
+//   record: hash of the solution (long), diameter of the solution (int), board snapshot
+class PuzzlePack {
+  static final int MAGIC = 0x4C454D50;
+  static final short VERSION = 1;
+  static final int HEADER_BYTES = 32;
+  // the place of the count in the header, and of the snapshot in a record
+  static final int COUNT_OFFSET = 16;
+  static final int SNAPSHOT_OFFSET = 12;
+
+  FileChannel channel;
+  int width;
+  int height;
+  int count;
+  int recordBytes;
+  long seed;
+  // whether this pack was created to be filled, and has its count to write when it closes
+  boolean writing;
+
+  PuzzlePack(FileChannel channel, int width, int height, int count, long seed) {
+    this.channel = channel;
+    this.width = width;
+    this.height = height;
+    this.count = count;
+    this.recordBytes = recordBytes(width * height);
+    this.seed = seed;
+  }
+
+  // Get the length of the record of a puzzle with the given number of tiles
+  static int recordBytes(int tiles) {
+    return SNAPSHOT_OFFSET + (int) BoardSnapshot.bytes(tiles);
+  }
+
+  // Create an empty pack of puzzles of the given size at the given path, replacing any file
+  // there, to be filled from the given seed
+  static PuzzlePack create(Path path, int width, int height, long seed) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    PuzzlePack pack = new PuzzlePack(channel, width, height, 0, seed);
+    pack.writing = true;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(width).putInt(height)
+            .putInt(0).putInt(pack.recordBytes).putLong(seed).flip();
+    pack.write(header, 0);
+    return pack;
+  }
+
+  // Open the pack at the given path to read its puzzles
+  static PuzzlePack open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    PuzzlePack pack = new PuzzlePack(channel, 1, 1, 0, 0);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    pack.read(header, 0);
+    if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC
+            || header.getShort() != VERSION) {
+      channel.close();
+      throw new IOException("not a puzzle pack");
+    }
+    header.getShort();
+    int width = header.getInt();
+    int height = header.getInt();
+    int count = header.getInt();
+    int recordBytes = header.getInt();
+    long seed = header.getLong();
+    if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE
+            || recordBytes != recordBytes(width * height) || count < 0
+            || channel.size() < HEADER_BYTES + (long) count * recordBytes) {
+      channel.close();
+      throw new IOException("corrupt puzzle pack");
+    }
+    return new PuzzlePack(channel, width, height, count, seed);
+  }
+
+  // Get the place in the file of the record of the puzzle with the given id
+  long offset(int id) {
+    return HEADER_BYTES + (long) id * this.recordBytes;
+  }
+
+  // Append the records of puzzles in the given buffer, from its position to its limit
+  // EFFECT: write the records after the last puzzle, and count them
+  void append(ByteBuffer records) throws IOException {
+    int added = records.remaining() / this.recordBytes;
+    this.write(records, this.offset(this.count));
+    this.count += added;
+  }
+
+  // Write all of the given bytes at the given place in the file
+  // EFFECT: write the bytes, and advance the position of the buffer past them
+  void write(ByteBuffer bytes, long offset) throws IOException {
+    while (bytes.hasRemaining()) {
+      offset += this.channel.write(bytes, offset);
+    }
+  }
+
+  // Read bytes from the given place in the file until the given buffer is full or the file
+  // ends, then flip the buffer
+  // EFFECT: fill the buffer
+  void read(ByteBuffer bytes, long offset) throws IOException {
+    int read = 0;
+    while (bytes.hasRemaining() && read >= 0) {
+      read = this.channel.read(bytes, offset + bytes.position());
+    }
+    bytes.flip();
+  }
+
+  // Read the record of the puzzle with the given id
+  ByteBuffer record(int id) throws IOException {
+    if (id < 0 || id >= this.count) {
+      throw new IOException("no puzzle " + id + " in a pack of " + this.count);
+    }
+    ByteBuffer record = ByteBuffer.allocate(this.recordBytes);
+    this.read(record, this.offset(id));
+    return record;
+  }
+
+  // Load the game of the puzzle with the given id
+  LightEngine load(int id) throws IOException {
+    ByteBuffer record = this.record(id);
+    record.position(SNAPSHOT_OFFSET);
+    return BoardSnapshot.read(record);
+  }
+
+  // Get the diameter of the solution of the puzzle with the given id
+  int diameter(int id) throws IOException {
+    return this.record(id).getInt(Long.BYTES);
+  }
+
+  // Write the number of puzzles into the header of a pack being filled, and close the file
+  // EFFECT: finish and close the file of this pack
+  void close() throws IOException {
+    if (this.writing) {
+      ByteBuffer count = ByteBuffer.allocate(Integer.BYTES).putInt(this.count);
+      count.flip();
+      this.write(count, COUNT_OFFSET);
+      this.writing = false;
+    }
+    this.channel.close();
+  }
+}
@@ -0,0 +1,35 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Represents a Java Flight Recorder event for one rotation of a tile, timed with the power
+// update it causes unless input is batched
+@Name("lightemall.Rotation")
+@Label("Tile Rotation")
+@Category({"Light Em All", "Input"})
+@Description("A tile rotated by the player, with the power update it caused")
+class RotationEvent extends Event {
+  @Label("Tile")
+  int tile;
+  @Label("Old Wires")
+  int oldWires;
+  @Label("New Wires")
+  int newWires;
+  @Label("Score")
+  int score;
+
+  // End the rotation of the given tile from the given wires to the given ones, and commit
+  // it if it is recorded
+  // EFFECT: fill in and commit this event if a recording enables it
+  void finish(int tile, int oldWires, int newWires, int score) {
+    if (this.shouldCommit()) {
+      this.tile = tile;
+      this.oldWires = oldWires;
+      this.newWires = newWires;
+      this.score = score;
+      this.commit();
+    }
+  }
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Represents one thread of a game server, serving its share of the connections from a
+// selector. Every session is only ever touched by the thread of its loop, so the sessions
+// of a loop share its traversal and its buffers without any locking
+class SessionLoop implements Runnable {
+  // the longest command line a client may send
+  static final int MAX_LINE = 256;
+
+  GameServer server;
+  Selector selector;
+  // the connections accepted for this loop and not registered with its selector yet
+  ConcurrentLinkedQueue<SocketChannel> arrivals;
+  // the traversal every game of this loop borrows
+  Traversal traversal;
+  // the buffer every read of this loop goes through, and the replies to the lines read
+  ByteBuffer buffer;
+  StringBuilder out;
+
+  SessionLoop(GameServer server) throws IOException {
+    this.server = server;
+    this.selector = Selector.open();
+    this.arrivals = new ConcurrentLinkedQueue<SocketChannel>();
+    this.traversal = new Traversal(GameSession.DEFAULT_SIZE * GameSession.DEFAULT_SIZE);
+    this.buffer = ByteBuffer.allocate(16384);
+    this.out = new StringBuilder();
+  }
+
+  // Hand the given connection to this loop
+  // EFFECT: queue the connection and wake the selector up to register it
+  void add(SocketChannel channel) {
+    this.arrivals.add(channel);
+    this.selector.wakeup();
+  }
+
+  // Serve the connections of this loop until the server closes
+  // EFFECT: read commands from the connections, play them and write the replies
+  public void run() {
+    try {
+      while (this.server.running) {
+        this.selector.select();
+        this.register();
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            if (key.isValid() && key.isReadable()) {
+              this.read(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+              this.flush(key);
+            }
+          }
+          catch (IOException e) {
+            this.close(key);
+          }
+        }
+      }
+    }
+    catch (IOException e) {
+      // A selector that fails cannot serve its connections any more
+    }
+    finally {
+      for (SelectionKey key : this.selector.keys()) {
+        this.close(key);
+      }
+      for (SocketChannel channel : this.arrivals) {
+        try {
+          channel.close();
+        }
+        catch (IOException e) {
+          // The connection was never served
+        }
+      }
+      try {
+        this.selector.close();
+      }
+      catch (IOException e) {
+        // Nothing is left to serve
+      }
+    }
+  }
+
+  // Register every connection that arrived with the selector, each with a new session
+  // EFFECT: add a session for each connection, and count it as open
+  void register() throws IOException {
+    SocketChannel channel = this.arrivals.poll();
+    while (channel != null) {
+      channel.configureBlocking(false);
+      channel.register(this.selector, SelectionKey.OP_READ, new GameSession(this.traversal));
+      this.server.openSessions.incrementAndGet();
+      channel = this.arrivals.poll();
+    }
+  }
+
+  // Read what the connection of the given key sent, answer every line that ended and
+  // write the replies, closing the connection at its end, when a line is too long or when
+  // a command fails unexpectedly
+  // EFFECT: play the commands on the session of the key
+  void read(SelectionKey key) throws IOException {
+    SocketChannel channel = (SocketChannel) key.channel();
+    GameSession session = (GameSession) key.attachment();
+    ByteBuffer buffer = this.buffer;
+    buffer.clear();
+    if (channel.read(buffer) < 0) {
+      this.close(key);
+      return;
+    }
+
+    byte[] bytes = buffer.array();
+    int end = buffer.position();
+    int start = 0;
+    StringBuilder out = this.out;
+    out.setLength(0);
+    for (int i = 0; i < end; i++) {
+      if (bytes[i] == '\n') {
+        if (!this.server.handle(session, session.line(bytes, start, i), out)) {
+          // Tell the client why, as far as the connection takes it without waiting
+          channel.write(ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.US_ASCII)));
+          this.close(key);
+          return;
+        }
+        start = i + 1;
+      }
+    }
+    if (!session.keep(bytes, start, end, MAX_LINE)) {
+      this.close(key);
+      return;
+    }
+    if (out.length() > 0) {
+      this.write(key, ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+  }
+
+  // Write the given replies to the connection of the given key, keeping what does not fit
+  // and reading nothing more from the connection until it is written
+  // EFFECT: change the pending replies of the session and the interest of the key
+  void write(SelectionKey key, ByteBuffer replies) throws IOException {
+    GameSession session = (GameSession) key.attachment();
+    ((SocketChannel) key.channel()).write(replies);
+    if (replies.hasRemaining()) {
+      session.pending = replies;
+      key.interestOps(SelectionKey.OP_WRITE);
+    }
+  }
+
+  // Write more of the pending replies of the session of the given key, and read from its
+  // connection again once they are all written
+  // EFFECT: change the pending replies of the session and the interest of the key
+  void flush(SelectionKey key) throws IOException {
+    GameSession session = (GameSession) key.attachment();
+    ((SocketChannel) key.channel()).write(session.pending);
+    if (!session.pending.hasRemaining()) {
+      session.pending = null;
+      key.interestOps(SelectionKey.OP_READ);
+    }
+  }
+
+  // Close the connection of the given key and drop its session
+  // EFFECT: cancel the key, and count the session as closed
+  void close(SelectionKey key) {
+    if (key.attachment() == null) {
+      return;
+    }
+    key.attach(null);
+    key.cancel();
+    try {
+      key.channel().close();
+    }
+    catch (IOException e) {
+      // The connection is gone either way
+    }
+    this.server.openSessions.decrementAndGet();
+  }
+}
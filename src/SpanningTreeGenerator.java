@@ -0,0 +1,21 @@
+import java.util.Random;
+
+// Represents a way to generate a random spanning tree over the tiles of a board,
+// which becomes the solution of the puzzle
+interface SpanningTreeGenerator {
+  // Generate the edges of a random spanning tree over the tiles of the given board,
+  // packed as weight and edge id, drawing every random choice from the given random
+  long[] generate(BoardStore store, Random rand);
+
+  // Rotate every tile of the given board a random number of quarter turns,
+  // drawing from the given random in row-major order
+  // EFFECT: change the wire mask of every tile
+  default void randomizeRotations(BoardStore store, Random rand) {
+    for (int tile = 0; tile < store.size(); tile++) {
+      int rotations = rand.nextInt(4);
+      for (int i = 0; i < rotations; i++) {
+        store.rotate(tile);
+      }
+    }
+  }
+}
@@ -0,0 +1,35 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Represents a Java Flight Recorder event for one move of the power station to a
+// connected tile
+@Name("lightemall.StationMove")
+@Label("Station Move")
+@Category({"Light Em All", "Input"})
+@Description("The power station moved by the player to a connected tile")
+class StationMoveEvent extends Event {
+  @Label("From Tile")
+  int from;
+  @Label("To Tile")
+  int to;
+  @Label("Wire")
+  int wire;
+  @Label("Score")
+  int score;
+
+  // End the move of the station from the given tile across the given wire to the given
+  // tile, and commit it if it is recorded
+  // EFFECT: fill in and commit this event if a recording enables it
+  void finish(int from, int to, int wire, int score) {
+    if (this.shouldCommit()) {
+      this.from = from;
+      this.to = to;
+      this.wire = wire;
+      this.score = score;
+      this.commit();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+// Represents a fork-join task running an action on every stripe of rows in a range,
+// splitting the range in halves until each task holds a single stripe
+class StripeTask extends RecursiveAction {
+  // the version of the serialized form every fork-join task has, though none is serialized
+  static final long serialVersionUID = 1L;
+  // the pools shared by everything that runs on a given number of threads, other than the
+  // number of threads of the common pool
+  static final HashMap<Integer, ForkJoinPool> POOLS = new HashMap<Integer, ForkJoinPool>();
+
+  // the first stripe and one past the last stripe of this task
+  int low;
+  int high;
+  IntConsumer action;
+
+  StripeTask(int low, int high, IntConsumer action) {
+    this.low = low;
+    this.high = high;
+    this.action = action;
+  }
+
+  // Get the pool shared by everything that runs on the given number of threads, the common
+  // pool if it has that many, so that no pool is left behind by the objects that use it
+  // EFFECT: start a pool with the given number of threads if none is shared yet
+  static synchronized ForkJoinPool pool(int parallelism) {
+    if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+      return ForkJoinPool.commonPool();
+    }
+    ForkJoinPool pool = POOLS.get(parallelism);
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism);
+      POOLS.put(parallelism, pool);
+    }
+    return pool;
+  }
+
+  // Run the action on the one stripe of this task, or fork both halves of the range
+  // EFFECT: whatever the action does to each stripe
+  protected void compute() {
+    if (this.high - this.low <= 1) {
+      if (this.high > this.low) {
+        this.action.accept(this.low);
+      }
+    }
+    else {
+      int middle = (this.low + this.high) >>> 1;
+      invokeAll(new StripeTask(this.low, middle, this.action),
+              new StripeTask(middle, this.high, this.action));
+    }
+  }
+}
@@ -0,0 +1,48 @@
+import javalib.worldimages.WorldImage;
+
+// Represents a bounded cache of tile images of one size, keyed by wire mask, color bucket
+// and power station flag, so every tile in the same state shares one immutable image
+class TileImageCache {
+  // the size of the tiles and the width of their wires, in pixels
+  int size;
+  int wireWidth;
+  // the image of every (mask, color bucket, power station) key, built on first use
+  WorldImage[] images;
+
+  TileImageCache(int size, int wireWidth) {
+    this.size = size;
+    this.wireWidth = wireWidth;
+    this.images = new WorldImage[16 * (GamePiece.UNPOWERED + 1) * 2];
+  }
+
+  // Get the key of a tile with the given wires, color bucket and power station flag
+  static int key(int mask, int bucket, boolean hasPowerStation) {
+    int key = (mask * (GamePiece.UNPOWERED + 1) + bucket) * 2;
+    if (hasPowerStation) {
+      key++;
+    }
+    return key;
+  }
+
+  // Get the image of the tile with the given key
+  // EFFECT: build and keep the image the first time its key is asked for
+  WorldImage image(int key) {
+    if (this.images[key] == null) {
+      int bucket = (key / 2) % (GamePiece.UNPOWERED + 1);
+      int mask = key / 2 / (GamePiece.UNPOWERED + 1);
+      this.images[key] = GamePiece.tileImage(mask, this.size, this.wireWidth,
+              GamePiece.PALETTE[bucket], key % 2 == 1);
+    }
+    return this.images[key];
+  }
+
+  // Get the image of a tile with the given wires, color bucket and power station flag
+  WorldImage image(int mask, int bucket, boolean hasPowerStation) {
+    return this.image(key(mask, bucket, hasPowerStation));
+  }
+
+  // Get the image of the given game piece, colored for the given radius
+  WorldImage image(GamePiece piece, int radius) {
+    return this.image(piece.wireMask(), piece.colorBucket(radius), piece.isPowerStation());
+  }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+// Represents a reusable breadth-first traversal engine over the tile indices of a board,
+// with a ring-buffer queue and visited marks that are reset by bumping an epoch
+class Traversal {
+  // the ring buffer of tile indices waiting to be visited, its first slot and its size
+  int[] queue;
+  int head;
+  int size;
+  // the epoch in which each tile was last marked, and the current epoch
+  int[] marks;
+  int epoch;
+  // the tiles collected during the current traversal
+  int[] found;
+  int foundCount;
+  // the packed (distance, tile) keys collected during the current traversal
+  long[] keys;
+  int keyCount;
+  // the number of tiles marked, and the most tiles queued at once, in the current traversal
+  int marked;
+  int peak;
+
+  Traversal(int tiles) {
+    this.queue = new int[Math.max(16, Integer.highestOneBit(Math.max(1, tiles - 1)) << 1)];
+    this.marks = new int[tiles];
+    this.found = new int[16];
+    this.keys = new long[16];
+    this.epoch = 0;
+  }
+
+  // Start a new traversal over a board with the given number of tiles
+  // EFFECT: empty the queue and the collected tiles and keys, and unmark every tile
+  void start(int tiles) {
+    if (this.marks.length < tiles) {
+      this.marks = new int[tiles];
+      this.epoch = 0;
+    }
+    this.epoch++;
+    // Only clear the marks when the epoch wraps around
+    if (this.epoch == 0) {
+      Arrays.fill(this.marks, 0);
+      this.epoch = 1;
+    }
+    this.head = 0;
+    this.size = 0;
+    this.foundCount = 0;
+    this.keyCount = 0;
+    this.marked = 0;
+    this.peak = 0;
+  }
+
+  // Mark the given tile as visited in this traversal, and tell if it was not marked yet
+  // EFFECT: change the mark of the given tile
+  boolean mark(int tile) {
+    if (this.marks[tile] == this.epoch) {
+      return false;
+    }
+    this.marks[tile] = this.epoch;
+    this.marked++;
+    return true;
+  }
+
+  // Check if the given tile was marked in this traversal
+  boolean isMarked(int tile) {
+    return this.marks[tile] == this.epoch;
+  }
+
+  // Add the given tile to the back of the queue
+  // EFFECT: change the queue, growing it if it is full
+  void add(int tile) {
+    if (this.size == this.queue.length) {
+      int[] bigger = new int[this.queue.length * 2];
+      for (int i = 0; i < this.size; i++) {
+        bigger[i] = this.queue[(this.head + i) & (this.queue.length - 1)];
+      }
+      this.queue = bigger;
+      this.head = 0;
+    }
+    this.queue[(this.head + this.size) & (this.queue.length - 1)] = tile;
+    this.size++;
+    this.peak = Math.max(this.peak, this.size);
+  }
+
+  // Get the tile at the front of the queue
+  int peek() {
+    return this.queue[this.head];
+  }
+
+  // Remove and return the tile at the front of the queue
+  // EFFECT: change the queue
+  int remove() {
+    int tile = this.queue[this.head];
+    this.head = (this.head + 1) & (this.queue.length - 1);
+    this.size--;
+    return tile;
+  }
+
+  // Check if the queue is empty
+  boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  // Collect the given tile in this traversal
+  // EFFECT: change the collected tiles, growing them if they are full
+  void collect(int tile) {
+    if (this.foundCount == this.found.length) {
+      this.found = Arrays.copyOf(this.found, this.found.length * 2);
+    }
+    this.found[this.foundCount] = tile;
+    this.foundCount++;
+  }
+
+  // Collect the given tile under the given distance, so the keys can be sorted by distance
+  // EFFECT: change the collected keys, growing them if they are full
+  void collectKey(int distance, int tile) {
+    if (this.keyCount == this.keys.length) {
+      this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+    }
+    this.keys[this.keyCount] = ((long) distance << 32) | tile;
+    this.keyCount++;
+  }
+
+  // Sort the collected keys by distance
+  // EFFECT: reorder the collected keys
+  void sortKeys() {
+    Arrays.sort(this.keys, 0, this.keyCount);
+  }
+
+  // Get the tile of the collected key at the given position
+  int keyTile(int i) {
+    return (int) this.keys[i];
+  }
+}
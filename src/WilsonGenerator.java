@@ -0,0 +1,48 @@
+import java.util.Random;
+
+// Generates a spanning tree with Wilson's algorithm of loop-erased random walks,
+// which picks uniformly among all spanning trees of the board.
+// The memory is linear but the time is not: the walks take as many steps as the expected
+// hitting time of the board, which is bounded by its cover time and grows like n log n on a
+// grid of n tiles, so this is the slowest generator on large boards
+class WilsonGenerator implements SpanningTreeGenerator {
+
+  // Generate a uniform spanning tree by walking from every tile not yet in the tree
+  // until the walk hits the tree, then adding the loop-erased walk to the tree
+  public long[] generate(BoardStore store, Random rand) {
+    int size = store.size();
+    long[] tree = new long[Math.max(0, size - 1)];
+    int count = 0;
+    boolean[] inTree = new boolean[size];
+    // the direction the latest walk left each tile in, which erases loops by overwriting
+    byte[] exits = new byte[size];
+    int[] choices = new int[4];
+
+    inTree[rand.nextInt(size)] = true;
+    for (int start = 0; start < size; start++) {
+      // Walk randomly until the tree is hit, remembering only the last exit of each tile
+      int current = start;
+      while (!inTree[current]) {
+        int options = 0;
+        for (int wire = BoardStore.LEFT; wire <= BoardStore.BOTTOM; wire <<= 1) {
+          if (store.neighbor(current, wire) != -1) {
+            choices[options] = wire;
+            options++;
+          }
+        }
+        exits[current] = (byte) choices[rand.nextInt(options)];
+        current = store.neighbor(current, exits[current]);
+      }
+
+      // Add the loop-erased walk to the tree
+      current = start;
+      while (!inTree[current]) {
+        inTree[current] = true;
+        tree[count] = Edge.pack(0, store.edgeToward(current, exits[current]));
+        count++;
+        current = store.neighbor(current, exits[current]);
+      }
+    }
+    return tree;
+  }
+}
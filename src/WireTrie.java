@@ -0,0 +1,137 @@
+// Represents one version of the wires of every tile of a board, that never changes. The
+// wires are kept in leaves of 64 tiles under a trie of nodes of 32 children, so changing
+// a tile copies one leaf and the few nodes above it, sharing everything else with the
+// version it changed. Keeping a version is keeping a reference, which makes it cheap to
+// branch off many versions of a board, and to go back to any of them
+class WireTrie {
+  // the number of bits of a tile index that pick its place in a leaf, and its child in
+  // a node
+  static final int LEAF_BITS = 6;
+  static final int NODE_BITS = 5;
+  static final int LEAF_MASK = (1 << LEAF_BITS) - 1;
+  static final int NODE_MASK = (1 << NODE_BITS) - 1;
+
+  // the number of tiles, and the number of levels of nodes above the leaves
+  int size;
+  int levels;
+  // a byte[] leaf if there are no levels of nodes, or else an Object[] node
+  Object root;
+
+  WireTrie(int size, int levels, Object root) {
+    this.size = size;
+    this.levels = levels;
+    this.root = root;
+  }
+
+  // Make a version of the wires of the tiles of the given board as they are now
+  static WireTrie of(BoardStore store) {
+    int size = store.size();
+    Object[] level = new Object[(size + LEAF_MASK) >>> LEAF_BITS];
+    for (int leaf = 0; leaf < level.length; leaf++) {
+      byte[] wires = new byte[1 << LEAF_BITS];
+      int first = leaf << LEAF_BITS;
+      for (int i = 0; i < wires.length && first + i < size; i++) {
+        wires[i] = (byte) store.wires(first + i);
+      }
+      level[leaf] = wires;
+    }
+
+    // Group every 32 nodes of a level under a node of the level above, up to one root
+    int levels = 0;
+    while (level.length > 1) {
+      Object[] above = new Object[(level.length + NODE_MASK) >>> NODE_BITS];
+      for (int node = 0; node < above.length; node++) {
+        Object[] children = new Object[1 << NODE_BITS];
+        int first = node << NODE_BITS;
+        for (int i = 0; i < children.length && first + i < level.length; i++) {
+          children[i] = level[first + i];
+        }
+        above[node] = children;
+      }
+      level = above;
+      levels++;
+    }
+    return new WireTrie(size, levels, level[0]);
+  }
+
+  // Get the number of bits of a tile index above its place in a node of the given level,
+  // counting the levels up from 1 just above the leaves
+  static int shift(int level) {
+    return LEAF_BITS + (level - 1) * NODE_BITS;
+  }
+
+  // Get the wire mask of the tile at the given index
+  int get(int tile) {
+    Object node = this.root;
+    for (int level = this.levels; level > 0; level--) {
+      node = ((Object[]) node)[(tile >>> shift(level)) & NODE_MASK];
+    }
+    return ((byte[]) node)[tile & LEAF_MASK];
+  }
+
+  // Make the version of this board where the tile at the given index has the given wire
+  // mask, copying only the leaf of the tile and the nodes above it
+  WireTrie set(int tile, int mask) {
+    if (this.get(tile) == (mask & 0xF)) {
+      return this;
+    }
+    return new WireTrie(this.size, this.levels, this.set(this.root, this.levels, tile, mask));
+  }
+
+  // Copy the given node of the given level with the tile at the given index below it
+  // changed to the given wire mask
+  Object set(Object node, int level, int tile, int mask) {
+    if (level == 0) {
+      byte[] leaf = ((byte[]) node).clone();
+      leaf[tile & LEAF_MASK] = (byte) (mask & 0xF);
+      return leaf;
+    }
+    Object[] copy = ((Object[]) node).clone();
+    int child = (tile >>> shift(level)) & NODE_MASK;
+    copy[child] = this.set(copy[child], level - 1, tile, mask);
+    return copy;
+  }
+
+  // Make the version of this board where the tile at the given index is rotated clockwise
+  WireTrie rotate(int tile) {
+    int mask = this.get(tile);
+    return this.set(tile, (mask << 1) | (mask >>> 3));
+  }
+
+  // Turn the tiles of the given board, which has the wires of this version, to the wires of
+  // the given version of the same board, visiting only the parts the versions do not share,
+  // and return the number of tiles changed
+  // EFFECT: change the wires of the tiles where the versions differ
+  int restore(WireTrie other, BoardStore store) {
+    return this.restore(this.root, other.root, this.levels, 0, store);
+  }
+
+  // Turn the tiles below the given nodes of the given level, the first of them at the given
+  // index, from the wires of this node to the wires of the other one, and return the number
+  // of tiles changed
+  // EFFECT: change the wires of the tiles where the nodes differ
+  int restore(Object node, Object other, int level, int first, BoardStore store) {
+    if (node == other) {
+      return 0;
+    }
+    int changed = 0;
+    if (level == 0) {
+      byte[] leaf = (byte[]) node;
+      byte[] wires = (byte[]) other;
+      for (int i = 0; i < wires.length && first + i < this.size; i++) {
+        if (leaf[i] != wires[i]) {
+          store.setWires(first + i, wires[i]);
+          changed++;
+        }
+      }
+      return changed;
+    }
+    Object[] children = (Object[]) node;
+    Object[] others = (Object[]) other;
+    for (int i = 0; i < children.length && children[i] != null; i++) {
+      changed += this.restore(children[i], others[i], level - 1,
+              first + (i << shift(level)), store);
+    }
+    return changed;
+  }
+}
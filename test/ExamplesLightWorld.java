@@ -1,8 +1,29 @@
 import java.awt.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import javalib.impworld.WorldScene;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import javalib.worldimages.AboveImage;
+import javalib.worldimages.BesideImage;
 import javalib.worldimages.Posn;
 import javalib.worldimages.TextImage;
 import javalib.worldimages.WorldImage;
@@ -21,61 +42,36 @@ class ExamplesLightWorld {
   GamePiece gp21;
   GamePiece gp22;
 
+  // Get the piece at the given position of the test game, with the given wires
+  GamePiece wiredPiece(int row, int col,
+                       boolean left, boolean right, boolean top, boolean bottom) {
+    GamePiece piece = this.testGame.board.get(row).get(col);
+    piece.setWires(left, right, top, bottom);
+    return piece;
+  }
+
   void initData() {
-    // create all pieces for 3x3 grid
-    this.gp00 = new GamePiece(0, 0, false, true, false, true);
-    this.gp01 = new GamePiece(0, 1, true, true, false, true);
-    this.gp02 = new GamePiece(0, 2, true, false, false, true);
-    this.gp10 = new GamePiece(1, 0, false, true, true, true);
-    this.gp11 = new GamePiece(1, 1, true, true, true, true);
-    this.gp12 = new GamePiece(1, 2, true, false, true, true);
-    this.gp20 = new GamePiece(2, 0, false, true, true, false);
-    this.gp21 = new GamePiece(2, 1, true, true, true, false);
-    this.gp22 = new GamePiece(2, 2, false, false, false, false);
-    // Manually build board structure
+    // Start from an empty 3x3 board whose pieces are views of the game's store
     this.testGame = new LightEmAll(3, 3);
-    this.testGame.rand = new Random(42);
-    this.testGame.board = new ArrayList<>();
-
-    // Column 0
-    ArrayList<GamePiece> col0 = new ArrayList<>();
-    col0.add(this.gp00);
-    col0.add(this.gp10);
-    col0.add(this.gp20);
-
-    // Column 1
-    ArrayList<GamePiece> col1 = new ArrayList<>();
-    col1.add(this.gp01);
-    col1.add(this.gp11);
-    col1.add(this.gp21);
-
-    // Column 2
-    ArrayList<GamePiece> col2 = new ArrayList<>();
-    col2.add(this.gp02);
-    col2.add(this.gp12);
-    col2.add(this.gp22);
-
-    this.testGame.board.add(col0);
-    this.testGame.board.add(col1);
-    this.testGame.board.add(col2);
-
-    // populate nodes
-    this.testGame.nodes = new ArrayList<>();
-    this.testGame.nodes.add(this.gp00);
-    this.testGame.nodes.add(this.gp10);
-    this.testGame.nodes.add(this.gp20);
-    this.testGame.nodes.add(this.gp01);
-    this.testGame.nodes.add(this.gp11);
-    this.testGame.nodes.add(this.gp21);
-    this.testGame.nodes.add(this.gp02);
-    this.testGame.nodes.add(this.gp12);
-    this.testGame.nodes.add(this.gp22);
+    this.testGame.engine.rand = new Random(42);
+    this.testGame.initializeEmptyBoard();
+
+    // wire all pieces for 3x3 grid
+    this.gp00 = this.wiredPiece(0, 0, false, true, false, true);
+    this.gp01 = this.wiredPiece(0, 1, true, true, false, true);
+    this.gp02 = this.wiredPiece(0, 2, true, false, false, true);
+    this.gp10 = this.wiredPiece(1, 0, false, true, true, true);
+    this.gp11 = this.wiredPiece(1, 1, true, true, true, true);
+    this.gp12 = this.wiredPiece(1, 2, true, false, true, true);
+    this.gp20 = this.wiredPiece(2, 0, false, true, true, false);
+    this.gp21 = this.wiredPiece(2, 1, true, true, true, false);
+    this.gp22 = this.wiredPiece(2, 2, false, false, false, false);
 
     // Configure power station
-    this.testGame.powerRow = 1;
-    this.testGame.powerCol = 1;
+    this.testGame.engine.powerRow = 1;
+    this.testGame.engine.powerCol = 1;
     this.gp11.updatePowerStation(true);
-    this.testGame.updatePower();
+    this.testGame.engine.updatePower();
   }
 
   //Testing method makeScene in class LightEmAll
@@ -88,12 +84,12 @@ class ExamplesLightWorld {
     t.checkExpect(scene.height, 190);
 
     // Verify the power station is correctly placed in the game state
-    t.checkExpect(this.testGame.board.get(1).get(1).powerStation, true);
-    t.checkExpect(this.testGame.board.get(1).get(1).powered, true);
+    t.checkExpect(this.testGame.board.get(1).get(1).isPowerStation(), true);
+    t.checkExpect(this.testGame.board.get(1).get(1).isPowered(), true);
 
     // Check a non-power station tile's state 
-    t.checkExpect(this.gp22.powered, false);
-    t.checkExpect(this.gp22.powerStation, false);
+    t.checkExpect(this.gp22.isPowered(), false);
+    t.checkExpect(this.gp22.isPowerStation(), false);
   }
 
   //Testing method drawBoard in class LightEmAll
@@ -106,24 +102,24 @@ class ExamplesLightWorld {
     // Verify first column has 3 rows
     t.checkExpect(this.testGame.board.get(0).size(), 3);
     // Confirm center piece is powered
-    t.checkExpect(this.testGame.board.get(1).get(1).powered, true);
+    t.checkExpect(this.testGame.board.get(1).get(1).isPowered(), true);
   }
 
   //Testing method drawBottom in class LightEmAll
   void testDrawBottom(Tester t) {
     initData();
 
-    // Initial moves should be 0 
+    // Moving left and back right returns the station to the center
     this.testGame.onKeyEvent("left");
     this.testGame.onKeyEvent("right");
-    t.checkExpect(this.testGame.board.get(1).get(1).powerStation, false);
+    t.checkExpect(this.testGame.board.get(1).get(1).isPowerStation(), true);
 
     // Verify radius through power propagation
-    t.checkExpect(this.testGame.board.get(0).get(1).powered, true);
+    t.checkExpect(this.testGame.board.get(0).get(1).isPowered(), true);
 
     // Check reset functionality maintains position
     this.testGame.onMousePressed(new Posn(75, 175));
-    t.checkExpect(this.testGame.board.get(1).get(1).powerStation, false);
+    t.checkExpect(this.testGame.board.get(1).get(1).isPowerStation(), true);
   }
 
   //Testing method drawWin in class LightEmAll
@@ -131,38 +127,38 @@ class ExamplesLightWorld {
     initData();
 
     // Verify win messages don't appear when allPowered is false
-    this.testGame.allPowered = false;
+    this.testGame.engine.allPowered = false;
     WorldScene scene1 = this.testGame.makeScene();
     // Create a comparison scene without win messages
     WorldScene expectedScene1 = new WorldScene(
-            this.testGame.width * 50, this.testGame.height * 50 + 40);
+            this.testGame.engine.width * 50, this.testGame.engine.height * 50 + 40);
     this.testGame.drawBoard(expectedScene1);
     this.testGame.drawBottom(expectedScene1);
     t.checkExpect(scene1, expectedScene1);
 
     // Verify win messages appear when allPowered is true
-    this.testGame.allPowered = true;
+    this.testGame.engine.allPowered = true;
     WorldScene scene2 = this.testGame.makeScene();
     // Create a comparison scene with win messages
     WorldScene expectedScene2 = new WorldScene(
-            this.testGame.width * 50, this.testGame.height * 50 + 40);
+            this.testGame.engine.width * 50, this.testGame.engine.height * 50 + 40);
     this.testGame.drawBoard(expectedScene2);
     this.testGame.drawBottom(expectedScene2);
     WorldImage winText = new TextImage("You Win", 50, Color.GREEN);
     WorldImage restartText = new TextImage("Press r to restart", 50, Color.GREEN);
-    expectedScene2.placeImageXY(
-            winText, this.testGame.width * 50 / 2, this.testGame.height * 50 / 2 - 25);
-    expectedScene2.placeImageXY(
-            restartText, this.testGame.width * 50 / 2, this.testGame.height * 50 / 2 + 25);
+    expectedScene2.placeImageXY(winText,
+            this.testGame.engine.width * 50 / 2, this.testGame.engine.height * 50 / 2 - 25);
+    expectedScene2.placeImageXY(restartText,
+            this.testGame.engine.width * 50 / 2, this.testGame.engine.height * 50 / 2 + 25);
     t.checkExpect(scene2, expectedScene2);
 
     // Verify win state is cleared after reset
     this.testGame.resetGame();
-    t.checkExpect(this.testGame.allPowered, false);
+    t.checkExpect(this.testGame.engine.allPowered, false);
     WorldScene scene3 = this.testGame.makeScene();
     // Win messages should not appear after reset
     WorldScene expectedScene3 = new WorldScene(
-            this.testGame.width * 50, this.testGame.height * 50 + 40);
+            this.testGame.engine.width * 50, this.testGame.engine.height * 50 + 40);
     this.testGame.drawBoard(expectedScene3);
     this.testGame.drawBottom(expectedScene3);
     t.checkExpect(scene3, expectedScene3);
@@ -173,59 +169,76 @@ class ExamplesLightWorld {
     initData();
     // Valid right move
     this.testGame.onKeyEvent("right");
-    t.checkExpect(this.testGame.powerRow, 2);
+    t.checkExpect(this.testGame.engine.powerRow, 2);
 
     // Blocked left move
-    this.testGame.powerRow = 0;
+    this.testGame.engine.powerRow = 0;
     this.testGame.onKeyEvent("left");
-    t.checkExpect(this.testGame.powerRow, 0);
+    t.checkExpect(this.testGame.engine.powerRow, 0);
 
     // Valid down move
     this.testGame.onKeyEvent("down");
-    t.checkExpect(this.testGame.powerCol, 2);
+    t.checkExpect(this.testGame.engine.powerCol, 2);
   }
 
-  //Testing method movePowerStation in class LightEmAll
+  //Testing method movePowerStation in class LightEngine
   void testMovePowerStation(Tester t) {
 
     initData();
     // Check initial power station
-    t.checkExpect(this.testGame.board.get(1).get(1).powerStation, true);
+    t.checkExpect(this.testGame.board.get(1).get(1).isPowerStation(), true);
 
     // Test moving right 
-    this.testGame.movePowerStation("right");
-    t.checkExpect(this.testGame.powerRow, 2);
-    t.checkExpect(this.testGame.board.get(2).get(1).powerStation, false);
+    this.testGame.engine.movePowerStation("right");
+    t.checkExpect(this.testGame.engine.powerRow, 2);
+    t.checkExpect(this.testGame.board.get(2).get(1).isPowerStation(), false);
 
     // Test blocked left move 
-    this.testGame.powerRow = 0;
-    this.testGame.movePowerStation("left");
-    t.checkExpect(this.testGame.powerRow, 0);
+    this.testGame.engine.powerRow = 0;
+    this.testGame.engine.movePowerStation("left");
+    t.checkExpect(this.testGame.engine.powerRow, 0);
 
     // Test vertical movement
-    this.testGame.movePowerStation("bottom");
-    t.checkExpect(this.testGame.powerCol, 1);
-    t.checkExpect(this.testGame.board.get(0).get(2).powerStation, false);
+    this.testGame.engine.movePowerStation("bottom");
+    t.checkExpect(this.testGame.engine.powerCol, 1);
+    t.checkExpect(this.testGame.board.get(0).get(2).isPowerStation(), false);
+
+    // Moving across a wire bit, as the keys do
+    initData();
+    this.testGame.engine.movePowerStation(BoardStore.BOTTOM);
+    t.checkExpect(this.testGame.engine.powerCol, 2);
+    t.checkExpect(this.testGame.engine.powerRow, 1);
+    this.testGame.engine.movePowerStation(BoardStore.LEFT);
+    t.checkExpect(this.testGame.engine.powerRow, 0);
+    t.checkExpect(this.testGame.engine.score, 2);
+    // The corner has no wires to walk on
+    this.testGame.engine.movePowerStation(BoardStore.RIGHT);
+    this.testGame.engine.movePowerStation(BoardStore.RIGHT);
+    t.checkExpect(this.testGame.engine.powerRow, 1);
+    t.checkExpect(this.testGame.engine.score, 3);
+    // Without batched input the power follows the station at once, as it does a turn
+    t.checkExpect(this.testGame.engine.powerStale, false);
+    t.checkExpect(this.testGame.engine.store.distance(this.testGame.engine.station()), 0);
   }
 
   //Testing method onTick in class LightEmAll
   void testOnTick(Tester t) {
     initData();
-    int initialTick = this.testGame.tick;
+    int initialTick = this.testGame.engine.tick;
 
     // Tick should increment if not all powered
     this.testGame.onTick();
-    t.checkExpect(this.testGame.tick, initialTick + 1);
+    t.checkExpect(this.testGame.engine.tick, initialTick + 1);
 
     // If marked as allPowered, tick should not increment
-    this.testGame.allPowered = true;
+    this.testGame.engine.allPowered = true;
     this.testGame.onTick();
-    t.checkExpect(this.testGame.tick, initialTick + 1);
+    t.checkExpect(this.testGame.engine.tick, initialTick + 1);
 
     // Reset allPowered to false and tick again
-    this.testGame.allPowered = false;
+    this.testGame.engine.allPowered = false;
     this.testGame.onTick();
-    t.checkExpect(this.testGame.tick, initialTick + 2);
+    t.checkExpect(this.testGame.engine.tick, initialTick + 2);
   }
 
   //Testing method onMousePressed in class LightEmAll
@@ -233,17 +246,115 @@ class ExamplesLightWorld {
     initData();
 
     // Valid rotation
-    boolean originalRight = this.gp00.right;
+    boolean originalRight = this.gp00.hasConnectionTo("right");
     this.testGame.onMousePressed(new Posn(25, 25));
-    t.checkExpect(this.gp00.right, !originalRight);
+    t.checkExpect(this.gp00.hasConnectionTo("right"), !originalRight);
 
     // Power propagates after valid click
-    t.checkExpect(this.gp00.powered, true);
+    t.checkExpect(this.gp00.isPowered(), true);
 
     // Negative coordinates click
-    boolean beforeRotation = this.gp00.right;
+    boolean beforeRotation = this.gp00.hasConnectionTo("right");
     this.testGame.onMousePressed(new Posn(-10, -10));
-    t.checkExpect(this.gp00.right, beforeRotation);
+    t.checkExpect(this.gp00.hasConnectionTo("right"), beforeRotation);
+
+    // Clicks go through the viewport to the tile under them
+    this.testGame.setViewport(2, 2);
+    this.testGame.scrollTo(1, 1);
+    int before = this.gp12.wireMask();
+    this.testGame.onMousePressed(new Posn(75, 25));
+    t.checkExpect(this.gp12.wireMask() == before, false);
+
+    // Clicks below or right of the viewport are ignored
+    before = this.gp12.wireMask();
+    this.testGame.onMousePressed(new Posn(125, 25));
+    t.checkExpect(this.gp12.wireMask(), before);
+  }
+
+  //Testing method setViewport in class LightEmAll
+  void testSetViewport(Tester t) {
+    initData();
+
+    // The whole board is shown by default
+    t.checkExpect(this.testGame.viewRows, 3);
+    t.checkExpect(this.testGame.viewCols, 3);
+
+    // The viewport never grows past the board, and stays on it
+    this.testGame.setViewport(2, 10);
+    t.checkExpect(this.testGame.viewRows, 2);
+    t.checkExpect(this.testGame.viewCols, 3);
+    this.testGame.scrollTo(5, 5);
+    t.checkExpect(this.testGame.viewRow, 1);
+    t.checkExpect(this.testGame.viewCol, 0);
+  }
+
+  //Testing method panViewport in class LightEmAll
+  void testPanViewport(Tester t) {
+    initData();
+    this.testGame.setViewport(2, 2);
+
+    // Pan keys move the window one tile and leave the board alone
+    t.checkExpect(this.testGame.panViewport("s"), true);
+    t.checkExpect(this.testGame.panViewport("d"), true);
+    t.checkExpect(this.testGame.viewRow, 1);
+    t.checkExpect(this.testGame.viewCol, 1);
+    this.testGame.onKeyEvent("w");
+    t.checkExpect(this.testGame.viewRow, 0);
+    t.checkExpect(this.testGame.engine.powerRow, 1);
+
+    // Other keys are not pan keys
+    t.checkExpect(this.testGame.panViewport("up"), false);
+  }
+
+  //Testing method scrollToShow in class LightEmAll
+  void testScrollToShow(Tester t) {
+    initData();
+    this.testGame.setViewport(1, 1);
+
+    // The window scrolls just enough to show the tile
+    this.testGame.scrollToShow(2, 1);
+    t.checkExpect(this.testGame.viewRow, 2);
+    t.checkExpect(this.testGame.viewCol, 1);
+    this.testGame.setViewport(2, 2);
+    this.testGame.scrollToShow(0, 1);
+    t.checkExpect(this.testGame.viewRow, 0);
+    t.checkExpect(this.testGame.viewCol, 1);
+
+    // Moving the power station keeps it in the window
+    this.testGame.scrollTo(0, 0);
+    this.testGame.onKeyEvent("right");
+    t.checkExpect(this.testGame.engine.powerRow, 2);
+    t.checkExpect(this.testGame.viewCol, 1);
+  }
+
+  //Testing method drawBoard in class LightEmAll
+  void testDrawBoardViewport(Tester t) {
+    initData();
+    this.testGame.setViewport(2, 2);
+    this.testGame.scrollTo(1, 1);
+
+    // Only the tiles in the window are drawn, relative to its corner
+    WorldScene scene = new WorldScene(100, 100);
+    this.testGame.drawBoard(scene);
+    WorldScene expected = new WorldScene(100, 100);
+    int radius = this.testGame.engine.radius;
+    expected.placeImageXY(this.gp11.drawPowerGamePiece(50, 5, radius), 25, 25);
+    expected.placeImageXY(this.gp12.drawPowerGamePiece(50, 5, radius), 75, 25);
+    expected.placeImageXY(this.gp21.drawPowerGamePiece(50, 5, radius), 25, 75);
+    expected.placeImageXY(this.gp22.drawPowerGamePiece(50, 5, radius), 75, 75);
+    t.checkExpect(scene, expected);
+
+    // The retained layer shows the same window
+    this.testGame.retainedRendering = true;
+    this.testGame.makeScene();
+    t.checkExpect(this.testGame.boardLayer.rows, 2);
+    t.checkExpect(this.testGame.boardLayer.image(),
+            new AboveImage(new BesideImage(
+                    this.testGame.layerImages.image(this.gp11, radius),
+                    this.testGame.layerImages.image(this.gp12, radius)),
+                    new BesideImage(
+                    this.testGame.layerImages.image(this.gp21, radius),
+                    this.testGame.layerImages.image(this.gp22, radius))));
   }
 
   //Testing method generateBoardd in class LightEmAll
@@ -252,11 +363,11 @@ class ExamplesLightWorld {
     LightEmAll game = new LightEmAll(2, 2);
     game.initializeEmptyBoard();
     // Test first piece
-    t.checkExpect(game.board.get(0).get(0).top, false);
-    t.checkExpect(game.board.get(0).get(0).right, false);
+    t.checkExpect(game.board.get(0).get(0).hasConnectionTo("top"), false);
+    t.checkExpect(game.board.get(0).get(0).hasConnectionTo("right"), false);
     // Test last piece
-    t.checkExpect(game.board.get(1).get(1).bottom, false);
-    t.checkExpect(game.board.get(1).get(1).left, false);
+    t.checkExpect(game.board.get(1).get(1).hasConnectionTo("bottom"), false);
+    t.checkExpect(game.board.get(1).get(1).hasConnectionTo("left"), false);
     // Test node count
     t.checkExpect(game.nodes.size(), 4);
   }
@@ -270,7 +381,7 @@ class ExamplesLightWorld {
     // All connections disabled
     boolean allOff = true;
     for (GamePiece p : game.nodes) {
-      if (p.top || p.right || p.bottom || p.left) {
+      if (p.wireMask() != 0) {
         allOff = false;
       }
     }
@@ -282,50 +393,51 @@ class ExamplesLightWorld {
     // No power stations
     int stations = 0;
     for (GamePiece p : game.nodes) {
-      if (p.powerStation) {
+      if (p.isPowerStation()) {
         stations++;
       }
     }
     t.checkExpect(stations, 0);
   }
 
-  //Testing method generateConnectionsFromMST in class LightEmAll
+  //Testing method generateConnectionsFromMST in class LightEngine
   void testGenerateConnectionsFromMST(Tester t) {
     initData();
     LightEmAll game = new LightEmAll(3, 3);
     game.generateBoard();
 
     // Check that the MST contains the correct number of edges f
-    t.checkExpect(game.mst.size(), 8);
+    t.checkExpect(game.engine.tree.length, 8);
     // Check that the top-left tile (0,0) is connected in at least one direction
-    t.checkExpect(game.board.get(0).get(0).left ||
-            game.board.get(0).get(0).right ||
-            game.board.get(0).get(0).top ||
-            game.board.get(0).get(0).bottom, true);
+    t.checkExpect(game.board.get(0).get(0).hasConnectionTo("left") ||
+            game.board.get(0).get(0).hasConnectionTo("right") ||
+            game.board.get(0).get(0).hasConnectionTo("top") ||
+            game.board.get(0).get(0).hasConnectionTo("bottom"), true);
     // Check that the bottom-right tile (2,2) is also connected in at least one direction
-    t.checkExpect(game.board.get(2).get(2).left ||
-            game.board.get(2).get(2).right ||
-            game.board.get(2).get(2).top ||
-            game.board.get(2).get(2).bottom, true);
+    t.checkExpect(game.board.get(2).get(2).hasConnectionTo("left") ||
+            game.board.get(2).get(2).hasConnectionTo("right") ||
+            game.board.get(2).get(2).hasConnectionTo("top") ||
+            game.board.get(2).get(2).hasConnectionTo("bottom"), true);
   }
 
-  //Testing method generateAllPossibleEdges in class LightEmAll
+  //Testing method generateAllPossibleEdges in class LightEngine
   void testGenerateAllPossibleEdges(Tester t) {
     initData();
-    ArrayList<Edge> edges = this.testGame.generateAllPossibleEdges();
+    long[] edges = this.testGame.engine.generateAllPossibleEdges();
+    BoardStore store = this.testGame.engine.store;
 
     // Check the total number of edges 
-    t.checkExpect(edges.size(), 12);
+    t.checkExpect(edges.length, 12);
 
     // Check that the edges exist, without checking specific ordering
     boolean foundEdgeFromGP00 = false;
     boolean foundEdgeToGP10 = false;
 
-    for (Edge e : edges) {
-      if (e.from == this.gp00) {
+    for (long e : edges) {
+      if (store.edgeFrom(Edge.idOf(e)) == this.gp00.index) {
         foundEdgeFromGP00 = true;
       }
-      if (e.to == this.gp10) {
+      if (store.edgeTo(Edge.idOf(e)) == this.gp10.index) {
         foundEdgeToGP10 = true;
       }
     }
@@ -334,38 +446,74 @@ class ExamplesLightWorld {
     t.checkExpect(foundEdgeToGP10, true);
   }
 
-  //Testing method buildMinimumSpanningTree in class LightEmAll
+  //Testing method buildMinimumSpanningTree in class LightEngine
   void testBuildMinimumSpanningTree(Tester t) {
     initData();
-    ArrayList<Edge> edges = this.testGame.generateAllPossibleEdges();
-    ArrayList<Edge> mst = this.testGame.buildMinimumSpanningTree(edges);
+    long[] edges = this.testGame.engine.generateAllPossibleEdges();
+    long[] mst = this.testGame.engine.buildMinimumSpanningTree(edges);
 
     // Check that the MST contains the correct number of edges
-    t.checkExpect(mst.size(), 8);
+    t.checkExpect(mst.length, 8);
 
     // Check that the MST edges are sorted in non-decreasing order of weight
-    t.checkExpect(mst.get(0).weight <= mst.get(1).weight, true);
-    t.checkExpect(mst.get(mst.size() - 1).weight >= mst.get(mst.size() - 2).weight, false);
+    t.checkExpect(Edge.weightOf(mst[0]) <= Edge.weightOf(mst[1]), true);
+    t.checkExpect(Edge.weightOf(mst[mst.length - 1])
+            >= Edge.weightOf(mst[mst.length - 2]), false);
+
+    // Sorted edges give a tree whose weights never decrease
+    mst = this.testGame.engine.buildMinimumSpanningTree(this.testGame.engine.sortEdges(edges));
+    boolean ordered = true;
+    for (int i = 1; i < mst.length; i++) {
+      ordered = ordered && Edge.weightOf(mst[i - 1]) <= Edge.weightOf(mst[i]);
+    }
+    t.checkExpect(ordered, true);
   }
 
-  //Testing method setConnectionsFromMST in class LightEmAll
+  //Testing method sortEdges in class LightEngine
+  void testSortEdges(Tester t) {
+    initData();
+    long[] edges = new long[] {
+        Edge.pack(999, 0), Edge.pack(3, 1), Edge.pack(7, 2), Edge.pack(3, 3), Edge.pack(0, 4)};
+    long[] sorted = this.testGame.engine.sortEdges(edges);
+
+    // Edges are ordered by weight, keeping the order of equal weights
+    t.checkExpect(sorted, new long[] {
+        Edge.pack(0, 4), Edge.pack(3, 1), Edge.pack(3, 3), Edge.pack(7, 2), Edge.pack(999, 0)});
+    // The given edges are left alone
+    t.checkExpect(edges[0], Edge.pack(999, 0));
+  }
+
+  //Testing method mstEdges in class LightEmAll
+  void testMstEdges(Tester t) {
+    initData();
+    LightEmAll game = new LightEmAll(3, 3);
+    ArrayList<Edge> mst = game.mstEdges();
+
+    // One Edge per tree edge, between neighboring pieces, with the tree's weights
+    t.checkExpect(mst.size(), 8);
+    t.checkExpect(mst.get(0).weight, Edge.weightOf(game.engine.tree[0]));
+    t.checkExpect(Math.abs(mst.get(0).from.row - mst.get(0).to.row)
+            + Math.abs(mst.get(0).from.col - mst.get(0).to.col), 1);
+  }
+
+  //Testing method setConnectionsFromMST in class LightEngine
   void testSetConnectionsFromMST(Tester t) {
     initData();
     LightEmAll game = new LightEmAll(2, 2);
     game.initializeEmptyBoard();
     GamePiece p00 = game.board.get(0).get(0);
     GamePiece p01 = game.board.get(0).get(1);
-    game.mst.add(new Edge(p00, p01, 1));
-    game.setConnectionsFromMST();
+    game.engine.tree = new long[] {Edge.pack(1, game.engine.store.rightEdge(p00.index))};
+    game.engine.setConnectionsFromMST();
     // Test right connection
-    t.checkExpect(p00.right, true);
-    t.checkExpect(p01.left, true);
+    t.checkExpect(p00.hasConnectionTo("right"), true);
+    t.checkExpect(p01.hasConnectionTo("left"), true);
     // Test no extra connections
-    t.checkExpect(p00.top, false);
-    t.checkExpect(p01.bottom, false);
+    t.checkExpect(p00.hasConnectionTo("top"), false);
+    t.checkExpect(p01.hasConnectionTo("bottom"), false);
   }
 
-  //Testing method randomizeRotations in class LightEmAll
+  //Testing method randomizeRotations in class LightEngine
   void testRandomizeRotations(Tester t) {
     initData();
     LightEmAll game = new LightEmAll(3, 3);
@@ -373,38 +521,38 @@ class ExamplesLightWorld {
     // Count the total number of directional connections (edges) before randomizing
     int initialConnections = 0;
     for (GamePiece p : game.nodes) {
-      if (p.top) {
+      if (p.hasConnectionTo("top")) {
         initialConnections++;
       }
-      if (p.right) {
+      if (p.hasConnectionTo("right")) {
         initialConnections++;
       }
-      if (p.bottom) {
+      if (p.hasConnectionTo("bottom")) {
         initialConnections++;
       }
-      if (p.left) {
+      if (p.hasConnectionTo("left")) {
         initialConnections++;
       }
     }
     // Randomly rotate all pieces on the board
-    game.randomizeRotations();
+    game.engine.randomizeRotations();
     // Count the total number of directional connections after rotation
     int newConnections = 0;
     boolean hasConnection = false; // Track if at least one connection remains
     for (GamePiece p : game.nodes) {
-      if (p.top) {
+      if (p.hasConnectionTo("top")) {
         newConnections++;
       }
-      if (p.right) {
+      if (p.hasConnectionTo("right")) {
         newConnections++;
       }
-      if (p.bottom) {
+      if (p.hasConnectionTo("bottom")) {
         newConnections++;
       }
-      if (p.left) {
+      if (p.hasConnectionTo("left")) {
         newConnections++;
       }
-      if (p.top || p.right || p.bottom || p.left) {
+      if (p.wireMask() != 0) {
         hasConnection = true;
       }
     }
@@ -423,30 +571,30 @@ class ExamplesLightWorld {
     game.generateBoard();
 
     // Verify power station is reset to top-left corner.
-    game.powerRow = 2;
-    game.powerCol = 2;
+    game.engine.powerRow = 2;
+    game.engine.powerCol = 2;
     game.resetGame();
-    t.checkExpect(game.powerRow, 0);
-    t.checkExpect(game.powerCol, 0);
+    t.checkExpect(game.engine.powerRow, 0);
+    t.checkExpect(game.engine.powerCol, 0);
 
     // Verify tick and score are reset to 0.
-    game.tick = 10;
-    game.score = 5;
+    game.engine.tick = 10;
+    game.engine.score = 5;
     game.resetGame();
-    t.checkExpect(game.tick, 0);
-    t.checkExpect(game.score, 0);
+    t.checkExpect(game.engine.tick, 0);
+    t.checkExpect(game.engine.score, 0);
 
     // Verify all nodes are unpowered after reset.
     for (ArrayList<GamePiece> column : game.board) {
       for (GamePiece piece : column) {
-        piece.powered = true;
+        piece.updatePowerState(true);
       }
     }
     game.resetGame();
     boolean allUnpowered = true;
     for (ArrayList<GamePiece> column : game.board) {
       for (GamePiece piece : column) {
-        if (piece.powered) {
+        if (piece.isPowered()) {
           allUnpowered = false;
         }
       }
@@ -454,42 +602,950 @@ class ExamplesLightWorld {
     t.checkExpect(allUnpowered, false);
   }
 
-  //Testing method updatePower in class LightEmAll
+  //Testing method updatePower in class LightEngine
   void testUpdatePower(Tester t) {
     initData();
     // Center remains powered
-    t.checkExpect(this.gp11.powered, true);
+    t.checkExpect(this.gp11.isPowered(), true);
 
     // Connected piece
-    t.checkExpect(this.gp01.powered, true);
+    t.checkExpect(this.gp01.isPowered(), true);
 
     // Disconnected piece remains same
-    t.checkExpect(this.gp22.powered, false);
+    t.checkExpect(this.gp22.isPowered(), false);
+  }
+
+  //Testing method rotate in class LightEngine
+  void testEngineRotate(Tester t) {
+    // An engine plays without any world around it
+    LightEngine engine = new LightEngine(5, 5);
+    engine.rand = new Random(7);
+    engine.initializeEmptyBoard();
+    engine.generateConnectionsFromMST();
+    engine.radius = 25;
+    engine.updatePower();
+    t.checkExpect(engine.allPowered, true);
+
+    // Turning a corner breaks the board, and four turns win it back
+    engine.rotate(0, 0);
+    t.checkExpect(engine.allPowered, false);
+    for (int i = 0; i < 3; i++) {
+      engine.rotate(0, 0);
+    }
+    t.checkExpect(engine.allPowered, true);
+    t.checkExpect(engine.score, 4);
+
+    // A full recompute gives the same power state
+    engine.incrementalPower = false;
+    engine.rotate(0, 0);
+    t.checkExpect(engine.allPowered, false);
+    t.checkExpect(engine.store.isPowered(0), true);
+  }
+
+  //Testing method solve in class LightEngine
+  void testEngineSolve(Tester t) {
+    LightEngine engine = new LightEngine(8, 6);
+    engine.rand = new Random(5);
+    engine.generateBoard();
+    engine.radius = 48;
+    engine.updatePower();
+    BoardSolver solver = engine.solve();
+    t.checkExpect(solver.size, 48);
+    t.checkExpect(this.wiredTree(engine.store), true);
+    t.checkExpect(engine.allPowered, true);
+  }
+
+  //Testing method solveInParallel in class LightEngine
+  void testEngineSolveInParallel(Tester t) {
+    LightEngine engine = new LightEngine(6, 35);
+    engine.rand = new Random(9);
+    engine.generateBoard();
+    engine.radius = 210;
+    ParallelBoardSolver solver = engine.solveInParallel();
+    t.checkExpect(this.wiredTree(engine.store), true);
+    t.checkExpect(engine.allPowered, true);
+    t.checkExpect(solver.report().startsWith("solved 210 tiles in "), true);
+  }
+
+  //Testing method repairPower in class LightEngine
+  void testRepairPower(Tester t) {
+    initData();
+    // Turning the top middle piece twice cuts its edge to the center,
+    // so it is reattached the long way round through the left column
+    for (int i = 0; i < 2; i++) {
+      int oldMask = this.gp01.wireMask();
+      this.gp01.rotate();
+      this.testGame.engine.repairPower(this.gp01.index, oldMask);
+    }
+    t.checkExpect(this.gp01.hasConnectionTo("bottom"), false);
+    t.checkExpect(this.gp01.getDistanceFromPS(), 3);
+    t.checkExpect(this.gp00.getDistanceFromPS(), 2);
+    t.checkExpect(this.gp22.getDistanceFromPS(), -1);
+
+    // Every click repairs to the same state as a full recompute
+    LightEmAll game = new LightEmAll(6, 6);
+    game.engine.rand = new Random(7);
+    game.generateBoard();
+    boolean same = true;
+    for (int i = 0; i < 300; i++) {
+      game.engine.allPowered = false;
+      game.onMousePressed(new Posn(game.engine.rand.nextInt(300), game.engine.rand.nextInt(300)));
+      int[] repaired = game.engine.store.distances.clone();
+      BitSet repairedPower = (BitSet) game.engine.store.powered.clone();
+      game.engine.updatePower();
+      same = same && Arrays.equals(repaired, game.engine.store.distances)
+              && repairedPower.equals(game.engine.store.powered);
+    }
+    t.checkExpect(same, true);
+
+    // The full recompute is still used when incremental repair is off
+    initData();
+    this.testGame.engine.incrementalPower = false;
+    this.testGame.onMousePressed(new Posn(75, 25));
+    t.checkExpect(this.gp01.hasConnectionTo("top"), true);
+    t.checkExpect(this.gp01.getDistanceFromPS(), 1);
+  }
+
+  //Testing method refreshPower in class LightEngine
+  void testRefreshPower(Tester t) {
+    LightEngine engine = new LightEngine(5, 5);
+    engine.rand = new Random(7);
+    engine.initializeEmptyBoard();
+    engine.generateConnectionsFromMST();
+    engine.radius = 25;
+    engine.updatePower();
+    engine.batchInput = true;
+
+    // A batched turn only marks the tile it turned as stale
+    engine.rotate(0, 0);
+    t.checkExpect(engine.powerStale, true);
+    t.checkExpect(engine.staleTile, 0);
+    t.checkExpect(engine.allPowered, true);
+
+    // Turning the same tile back keeps a single stale tile, so one repair wins the board
+    for (int i = 0; i < 3; i++) {
+      engine.rotate(0, 0);
+    }
+    t.checkExpect(engine.staleTile, 0);
+    t.checkExpect(engine.isAllPowered(), true);
+    t.checkExpect(engine.powerStale, false);
+    t.checkExpect(engine.score, 4);
+
+    // Turning two tiles needs a full update, which gives the same state as a strict engine
+    engine.rotate(0, 0);
+    engine.rotate(4, 4);
+    t.checkExpect(engine.staleTile, -1);
+    engine.refreshPower();
+    int[] batched = engine.store.distances.clone();
+    BitSet batchedPower = (BitSet) engine.store.powered.clone();
+    engine.updatePower();
+    t.checkExpect(Arrays.equals(batched, engine.store.distances), true);
+    t.checkExpect(batchedPower.equals(engine.store.powered), true);
+    t.checkExpect(engine.allPowered, false);
+
+    // Moving the power station marks the power state stale until the time is advanced
+    engine.movePowerStation(BoardStore.BOTTOM);
+    engine.movePowerStation(BoardStore.RIGHT);
+    t.checkExpect(engine.powerStale, engine.powerCol != 0 || engine.powerRow != 0);
+    engine.advanceTime();
+    t.checkExpect(engine.powerStale, false);
+    t.checkExpect(engine.store.distance(engine.station()), 0);
+  }
+
+  //Testing batched input in class LightEmAll
+  void testBatchInput(Tester t) {
+    initData();
+    this.testGame.engine.batchInput = true;
+    // Two turns of the top middle piece wait for the next frame
+    this.testGame.onMousePressed(new Posn(75, 25));
+    this.testGame.onMousePressed(new Posn(75, 25));
+    t.checkExpect(this.testGame.engine.powerStale, true);
+    t.checkExpect(this.gp01.getDistanceFromPS(), 1);
+
+    // The frame evaluates them once, the way a strict game would have after each
+    this.testGame.makeScene();
+    t.checkExpect(this.testGame.engine.powerStale, false);
+    t.checkExpect(this.gp01.hasConnectionTo("bottom"), false);
+    t.checkExpect(this.gp01.getDistanceFromPS(), 3);
+    t.checkExpect(this.gp00.getDistanceFromPS(), 2);
+
+    // A key that does not move the power station leaves nothing to evaluate
+    this.testGame.onKeyEvent("x");
+    t.checkExpect(this.testGame.engine.powerStale, false);
+  }
+
+  //Testing method handle in class GameSession
+  void testGameSessionHandle(Tester t) {
+    GameSession session = new GameSession(new Traversal(1));
+    t.checkExpect(this.reply(session, "R 0 0"), "E no game\n");
+    t.checkExpect(this.reply(session, "N 0 3"), "E bad size\n");
+    t.checkExpect(this.reply(session, "N 101 3"), "E bad size\n");
+    t.checkExpect(this.reply(session, "N 3 4"), "G 3 4\n");
+    t.checkExpect(session.engine.batchInput, true);
+    t.checkExpect(session.engine.traversal, session.traversal);
+
+    // The first diff holds every tile, and the next one holds none
+    String[] first = this.reply(session, "D").trim().split(" ");
+    t.checkExpect(first.length, 4 + 3 * 12);
+    t.checkExpect(first[3], "12");
+    t.checkExpect(this.reply(session, "D").endsWith(" 0 0\n"), true);
+
+    // A turned tile shows up in the next diff
+    t.checkExpect(this.reply(session, "R 4 0"), "E bad tile\n");
+    t.checkExpect(this.reply(session, "R 1 2"), "K 1\n");
+    t.checkExpect(session.engine.powerStale, true);
+    String diff = this.reply(session, "D");
+    t.checkExpect(diff.contains(" 5 " + (session.engine.store.tiles[5]
+            | (session.engine.store.isPowered(5) ? GameSession.POWERED : 0)) + " "), true);
+    t.checkExpect(session.engine.powerStale, false);
+
+    // The power station cannot leave the board
+    t.checkExpect(this.reply(session, "M x"), "E bad direction\n");
+    t.checkExpect(this.reply(session, "M l"), "K 1\n");
+    t.checkExpect(this.reply(session, "X"), "E unknown command\n");
+
+    // The tiles lit are counted without a scan
+    int lit = session.engine.store.powered.cardinality();
+    t.checkExpect(this.reply(session, "P"), "P " + lit + " 12 " + (lit * 100 / 12) + "\n");
+    t.checkExpect(this.reply(session, "P 1"), "E unknown command\n");
+    t.checkExpect(this.reply(session, "N"), "G 3 4\n");
+    t.checkExpect(session.engine.score, 0);
+  }
+
+  //Testing method diff in class GameSession
+  void testGameSessionDiff(Tester t) {
+    GameSession session = new GameSession(new Traversal(1));
+    this.reply(session, "N 30 30");
+    session.engine.solve();
+    t.checkExpect(this.reply(session, "D").split(" ")[3], "900");
+
+    // A station move that comes back to where it started sends nothing
+    int wire = Integer.lowestOneBit(session.engine.store.links(0));
+    int way = Integer.numberOfTrailingZeros(wire);
+    this.reply(session, "M " + "lurd".charAt(way));
+    this.reply(session, "M " + "lurd".charAt(way ^ 2));
+    t.checkExpect(session.engine.station(), 0);
+    t.checkExpect(this.reply(session, "D").endsWith(" 0 0\n"), true);
+
+    // With part of the board cut off, a move sends exactly the tiles that look different,
+    // and not the tiles that stay cut off
+    this.reply(session, "R 29 29");
+    this.reply(session, "R 29 29");
+    this.reply(session, "D");
+    this.reply(session, "M " + "lurd".charAt(way));
+    int[] before = session.sent.clone();
+    String[] words = this.reply(session, "D").trim().split(" ");
+    BitSet listed = new BitSet();
+    for (int i = 4; i < words.length; i += 3) {
+      listed.set(Integer.parseInt(words[i]));
+    }
+    t.checkExpect(listed.cardinality(), Integer.parseInt(words[3]));
+    BitSet differ = new BitSet();
+    for (int tile = 0; tile < 900; tile++) {
+      if (before[tile] != session.code(session.engine.store, tile)) {
+        differ.set(tile);
+      }
+    }
+    t.checkExpect(listed, differ);
+    t.checkExpect(session.engine.store.distance(899), -1);
+    t.checkExpect(listed.get(899), false);
+  }
+
+  // Get the reply of the given session to the given line
+  String reply(GameSession session, String line) {
+    StringBuilder out = new StringBuilder();
+    session.handle(line, out);
+    return out.toString();
+  }
+
+  //Testing methods parse, line and keep in class GameSession
+  void testGameSessionLines(Tester t) {
+    t.checkExpect(GameSession.parse("12"), 12);
+    t.checkExpect(GameSession.parse("1a"), -1);
+    t.checkExpect(GameSession.parse(""), -1);
+
+    GameSession session = new GameSession(new Traversal(1));
+    byte[] bytes = "R 1 2\nR 3".getBytes(StandardCharsets.US_ASCII);
+    t.checkExpect(session.line(bytes, 0, 5), "R 1 2");
+    t.checkExpect(session.keep(bytes, 6, 9, 8), true);
+    byte[] rest = " 4\n".getBytes(StandardCharsets.US_ASCII);
+    t.checkExpect(session.line(rest, 0, 2), "R 3 4");
+    t.checkExpect(session.partial, null);
+    t.checkExpect(session.keep(bytes, 0, 9, 8), false);
+  }
+
+  //Testing class GameServer against a local client
+  void testGameServer(Tester t) throws IOException {
+    GameServer server = new GameServer(0, 2);
+    server.start();
+    Socket first = new Socket(InetAddress.getLoopbackAddress(), server.port());
+    Socket second = new Socket(InetAddress.getLoopbackAddress(), server.port());
+    first.setSoTimeout(10000);
+    second.setSoTimeout(10000);
+    BufferedReader firstIn = new BufferedReader(
+            new InputStreamReader(first.getInputStream(), StandardCharsets.US_ASCII));
+    BufferedReader secondIn = new BufferedReader(
+            new InputStreamReader(second.getInputStream(), StandardCharsets.US_ASCII));
+
+    // A line may arrive in pieces, and many lines in one piece
+    OutputStream out = first.getOutputStream();
+    out.write("N 4 4\nR 0".getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+    t.checkExpect(firstIn.readLine(), "G 4 4");
+    out.write(" 0\nR 0 0\nD\n".getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+    t.checkExpect(firstIn.readLine(), "K 1");
+    t.checkExpect(firstIn.readLine(), "K 2");
+    t.checkExpect(firstIn.readLine().split(" ")[3], "16");
+    out.write("P\n".getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+    t.checkExpect(firstIn.readLine().startsWith("P "), true);
+
+    // Every connection has a game of its own
+    second.getOutputStream().write("D\nI\n".getBytes(StandardCharsets.US_ASCII));
+    t.checkExpect(secondIn.readLine(), "E no game");
+    String[] stats = secondIn.readLine().split(" ");
+    t.checkExpect(stats[1], "2");
+    t.checkExpect(stats[2], "2");
+    t.checkExpect(stats[3] + stats[4], "N1");
+    t.checkExpect(stats[7] + stats[8], "R2");
+    t.checkExpect(stats[15] + stats[16], "D2");
+    t.checkExpect(stats[19] + stats[20], "P1");
+    t.checkExpect(stats[23] + stats[24], "I0");
+    t.checkExpect(stats[27] + stats[28], "?0");
+
+    first.close();
+    second.close();
+    server.close();
+    t.checkExpect(server.openSessions.get(), 0);
+    t.checkExpect(server.report().startsWith("0 open sessions, 2 in total; N 1 lines, "), true);
+  }
+
+  //Testing method handle in class GameServer
+  void testGameServerHandle(Tester t) throws IOException {
+    GameServer server = new GameServer(0, 1);
+    GameSession session = new GameSession(new Traversal(1));
+    StringBuilder out = new StringBuilder();
+    t.checkExpect(server.handle(session, "N 3 3", out), true);
+    t.checkExpect(server.handle(session, "I", out), true);
+
+    // A command that breaks is answered, and gives up only its session's game
+    session.engine.store = null;
+    out.setLength(0);
+    t.checkExpect(server.handle(session, "R 0 0", out), false);
+    t.checkExpect(out.toString(), "E internal\n");
+    t.checkExpect(session.engine, null);
+    t.checkExpect(server.counts[1].sum(), 1L);
+    server.close();
+  }
+
+  //Testing methods save and load in class BoardSnapshot
+  void testBoardSnapshot(Tester t) throws IOException {
+    // An odd number of tiles leaves the last byte half empty
+    LightEngine engine = new LightEngine(5, 3);
+    engine.reseed(42);
+    engine.generateBoard();
+    engine.rotate(1, 2);
+    engine.movePowerStation(BoardStore.RIGHT);
+    engine.updatePower();
+    engine.tick = 17;
+    Path file = Files.createTempFile("board", ".lem");
+    BoardSnapshot.save(engine, file);
+    t.checkExpect(Files.size(file), BoardSnapshot.bytes(15));
+    t.checkExpect(Files.size(file), 52L);
+
+    LightEngine loaded = BoardSnapshot.load(file);
+    Files.delete(file);
+    t.checkExpect(loaded.width, 5);
+    t.checkExpect(loaded.height, 3);
+    t.checkExpect(Arrays.equals(loaded.store.tiles, engine.store.tiles), true);
+    t.checkExpect(Arrays.equals(loaded.store.distances, engine.store.distances), true);
+    t.checkExpect(loaded.store.powered, engine.store.powered);
+    t.checkExpect(loaded.station(), engine.station());
+    t.checkExpect(loaded.radius, engine.radius);
+    t.checkExpect(loaded.score, engine.score);
+    t.checkExpect(loaded.tick, 17);
+    t.checkExpect(loaded.seed, 42L);
+    t.checkExpect(loaded.allPowered, engine.allPowered);
+
+    // The same seed generates the same next board
+    engine.reseed(42);
+    engine.generateBoard();
+    loaded.generateBoard();
+    t.checkExpect(Arrays.equals(loaded.store.tiles, engine.store.tiles), true);
+  }
+
+  //Testing methods write and read in class BoardSnapshot
+  void testBoardSnapshotBuffer(Tester t) throws IOException {
+    LightEngine engine = new LightEngine(4, 4);
+    ByteBuffer buffer = ByteBuffer.allocate((int) BoardSnapshot.bytes(16));
+    BoardSnapshot.write(engine, buffer);
+    t.checkExpect(buffer.remaining(), 0);
+    t.checkExpect(buffer.get(BoardSnapshot.HEADER_BYTES) & 15,
+            engine.store.wires(0));
+    t.checkExpect((buffer.get(BoardSnapshot.HEADER_BYTES) >> 4) & 15,
+            engine.store.wires(1));
+    buffer.flip();
+    t.checkExpect(Arrays.equals(BoardSnapshot.read(buffer).store.tiles, engine.store.tiles),
+            true);
+
+    // A snapshot that is cut short or is not one at all does not load
+    buffer.flip();
+    buffer.limit(buffer.limit() - 1);
+    t.checkExpect(this.readError(buffer), "corrupt board snapshot");
+    t.checkExpect(this.readError(ByteBuffer.allocate(64)), "not a board snapshot");
+  }
+
+  // Get the message of the error reading a snapshot from the given buffer, if any
+  String readError(ByteBuffer buffer) {
+    try {
+      BoardSnapshot.read(buffer);
+      return "";
+    }
+    catch (IOException e) {
+      return e.getMessage();
+    }
+  }
+
+  //Testing methods record and replay in class MoveJournal
+  void testMoveJournal(Tester t) throws IOException {
+    LightEngine engine = new LightEngine(6, 5);
+    engine.reseed(3);
+    engine.generateBoard();
+    MoveJournal journal = new MoveJournal(8);
+    engine.record(journal);
+    t.checkExpect(journal.checkpoints, 1);
+
+    // Play 40 moves, remembering the board after each of them
+    ArrayList<byte[]> boards = new ArrayList<byte[]>();
+    boards.add(engine.store.tiles.clone());
+    Random rand = new Random(3);
+    while (engine.score < 40) {
+      if (rand.nextInt(4) == 0) {
+        engine.movePowerStation(1 << rand.nextInt(4));
+      }
+      else {
+        engine.rotate(rand.nextInt(5), rand.nextInt(6));
+      }
+      engine.updatePower();
+      if (boards.size() == engine.score) {
+        boards.add(engine.store.tiles.clone());
+      }
+    }
+    t.checkExpect(journal.moves, 40L);
+    t.checkExpect(journal.checkpoints, 6);
+
+    // Every move replays to the same board, from the checkpoint before it
+    boolean same = true;
+    for (int move = 0; move <= 40; move++) {
+      LightEngine replayed = journal.replay(move);
+      same = same && Arrays.equals(replayed.store.tiles, boards.get(move))
+              && replayed.score == move && !replayed.powerStale;
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(journal.replay(99).score, 40);
+    t.checkExpect(Arrays.equals(journal.replay(99).store.distances, engine.store.distances),
+            true);
+
+    // A new board is checkpointed without counting as a move
+    engine.resetGame();
+    t.checkExpect(journal.checkpoints, 7);
+    t.checkExpect(Arrays.equals(journal.replay(40).store.tiles, engine.store.tiles), true);
+    t.checkExpect(journal.replay(40).score, 0);
+
+    // An undo and a redo are moves of their own, so the move before each still replays
+    engine.keepHistory();
+    engine.rotate(0, 0);
+    byte[] rotated = engine.store.tiles.clone();
+    engine.undo();
+    byte[] undone = engine.store.tiles.clone();
+    engine.redo();
+    t.checkExpect(journal.moves, 43L);
+    t.checkExpect(Arrays.equals(journal.replay(41).store.tiles, rotated), true);
+    t.checkExpect(Arrays.equals(journal.replay(42).store.tiles, undone), true);
+    t.checkExpect(Arrays.equals(journal.replay(43).store.tiles, rotated), true);
+
+    // A journal needs checkpoints a positive number of moves apart
+    String error = "";
+    try {
+      new MoveJournal(0);
+    }
+    catch (IllegalArgumentException e) {
+      error = e.getMessage();
+    }
+    t.checkExpect(error, "checkpoint interval 0 is not positive");
+  }
+
+  //Testing methods appendTo and read in class MoveJournal
+  void testMoveJournalFile(Tester t) throws IOException {
+    LightEngine engine = new LightEngine(4, 4);
+    MoveJournal journal = new MoveJournal(4);
+    engine.record(journal);
+    Path file = Files.createTempFile("moves", ".lemj");
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+    for (int i = 0; i < 6; i++) {
+      engine.rotate(i % 4, i / 4);
+    }
+    journal.appendTo(channel);
+    for (int i = 0; i < 600; i++) {
+      engine.rotate(3, 3);
+    }
+    journal.appendTo(channel);
+    channel.close();
+    t.checkExpect(Files.size(file), (long) journal.length);
+
+    // A tile index and its opcode fit in a byte, and a checkpoint's length in two
+    t.checkExpect(journal.length, MoveJournal.HEADER_BYTES + 606
+            + 152 * (2 + (int) BoardSnapshot.bytes(16)));
+
+    MoveJournal read = MoveJournal.read(file, 4);
+    t.checkExpect(read.moves, 606L);
+    t.checkExpect(read.checkpoints, journal.checkpoints);
+    t.checkExpect(Arrays.equals(read.replay(606).store.tiles, engine.store.tiles), true);
+    t.checkExpect(Arrays.equals(read.replay(5).store.tiles, journal.replay(5).store.tiles),
+            true);
+
+    // Undos and redos are counted as moves when the journal is read back
+    engine.keepHistory();
+    engine.rotate(0, 0);
+    engine.undo();
+    Files.write(file, Arrays.copyOf(journal.bytes, journal.length));
+    read = MoveJournal.read(file, 4);
+    t.checkExpect(read.moves, 608L);
+    t.checkExpect(Arrays.equals(read.replay(608).store.tiles, engine.store.tiles), true);
+
+    // Anything else is not a journal
+    Files.write(file, new byte[] {1, 2, 3, 4, 5});
+    String error = "";
+    try {
+      MoveJournal.read(file, 4);
+    }
+    catch (IOException e) {
+      error = e.getMessage();
+    }
+    Files.delete(file);
+    t.checkExpect(error, "not a move journal");
+  }
+
+  //Testing methods of, get, set and rotate in class WireTrie
+  void testWireTrie(Tester t) {
+    // 40 by 50 tiles need 32 leaves under one node, and 41 by 50 need a second level
+    BoardStore store = new BoardStore(40, 50);
+    for (int tile = 0; tile < store.size(); tile++) {
+      store.setWires(tile, tile % 16);
+    }
+    WireTrie trie = WireTrie.of(store);
+    t.checkExpect(trie.levels, 1);
+    t.checkExpect(WireTrie.of(new BoardStore(41, 50)).levels, 2);
+    t.checkExpect(WireTrie.of(new BoardStore(8, 8)).levels, 0);
+    boolean same = true;
+    for (int tile = 0; tile < store.size(); tile++) {
+      same = same && trie.get(tile) == tile % 16;
+    }
+    t.checkExpect(same, true);
+
+    // A change copies one leaf, and leaves the old version as it was
+    WireTrie turned = trie.rotate(1999);
+    t.checkExpect(turned.get(1999), 15);
+    t.checkExpect(trie.get(1999), 15);
+    turned = trie.rotate(1998);
+    t.checkExpect(turned.get(1998), 13);
+    t.checkExpect(trie.get(1998), 14);
+    Object[] root = (Object[]) trie.root;
+    Object[] turnedRoot = (Object[]) turned.root;
+    t.checkExpect(turnedRoot[0] == root[0], true);
+    t.checkExpect(turnedRoot[31] == root[31], false);
+    t.checkExpect(trie.set(5, 5) == trie, true);
+  }
+
+  //Testing method restore in class WireTrie
+  void testWireTrieRestore(Tester t) {
+    LightEngine engine = new LightEngine(41, 50);
+    WireTrie before = WireTrie.of(engine.store);
+    byte[] tiles = engine.store.tiles.clone();
+    WireTrie after = before;
+    for (int tile = 0; tile < 2000; tile += 100) {
+      engine.store.rotate(tile);
+      after = after.rotate(tile);
+    }
+    engine.store.changed.clear();
+    t.checkExpect(after.restore(before, engine.store) <= 20, true);
+    t.checkExpect(Arrays.equals(engine.store.tiles, tiles), true);
+    t.checkExpect(engine.store.changed.cardinality() <= 20, true);
+    t.checkExpect(before.restore(before, engine.store), 0);
+  }
+
+  //Testing methods undo and redo in class LightEngine
+  void testUndoRedo(Tester t) {
+    LightEngine engine = new LightEngine(5, 5);
+    t.checkExpect(engine.undo(), false);
+    engine.keepHistory();
+    byte[] start = engine.store.tiles.clone();
+    int[] distances = engine.store.distances.clone();
+    engine.rotate(2, 3);
+    engine.rotate(4, 4);
+    byte[] turned = engine.store.tiles.clone();
+    t.checkExpect(engine.history.count, 3);
+
+    // Undo goes back one move at a time, with the power state of that board
+    t.checkExpect(engine.undo(), true);
+    t.checkExpect(engine.undo(), true);
+    t.checkExpect(engine.undo(), false);
+    t.checkExpect(Arrays.equals(engine.store.tiles, start), true);
+    t.checkExpect(Arrays.equals(engine.store.distances, distances), true);
+    t.checkExpect(engine.score, 2);
+
+    // Redo goes forward again, until a new move forgets what was undone
+    t.checkExpect(engine.redo(), true);
+    t.checkExpect(engine.redo(), true);
+    t.checkExpect(engine.redo(), false);
+    t.checkExpect(Arrays.equals(engine.store.tiles, turned), true);
+    engine.undo();
+    engine.rotate(0, 0);
+    t.checkExpect(engine.redo(), false);
+    t.checkExpect(engine.history.count, 3);
+    t.checkExpect(engine.history.wires[3], null);
+
+    // A new board starts a new history
+    engine.generateBoard();
+    t.checkExpect(engine.undo(), false);
+  }
+
+  //Testing undo and redo keys in class LightEmAll
+  void testOnKeyEventUndo(Tester t) {
+    initData();
+    this.testGame.engine.keepHistory();
+    this.testGame.onMousePressed(new Posn(75, 25));
+    this.testGame.onMousePressed(new Posn(75, 25));
+    t.checkExpect(this.gp01.getDistanceFromPS(), 3);
+    this.testGame.onKeyEvent("down");
+    t.checkExpect(this.testGame.engine.station(), 7);
+    this.testGame.onKeyEvent("z");
+    t.checkExpect(this.gp01.hasConnectionTo("bottom"), false);
+    t.checkExpect(this.testGame.engine.station(), 4);
+    this.testGame.onKeyEvent("z");
+    this.testGame.onKeyEvent("z");
+    t.checkExpect(this.gp01.hasConnectionTo("bottom"), true);
+    t.checkExpect(this.gp01.getDistanceFromPS(), 1);
+    t.checkExpect(this.gp11.isPowerStation(), true);
+    this.testGame.onKeyEvent("y");
+    this.testGame.onKeyEvent("y");
+    this.testGame.onKeyEvent("y");
+    t.checkExpect(this.testGame.engine.station(), 7);
+    t.checkExpect(this.gp21.isPowerStation(), true);
+    t.checkExpect(this.gp11.isPowerStation(), false);
+  }
+
+  //Testing method fill in class PackGenerator
+  void testPackGenerator(Tester t) throws IOException {
+    // Tiny boards have few solutions, so many of them are duplicates
+    Path file = Files.createTempFile("puzzles", ".lemp");
+    PackGenerator generator = new PackGenerator(2, 2, 11, 2);
+    PuzzlePack pack = PuzzlePack.create(file, 2, 2, 11);
+    generator.fill(pack, 4);
+    pack.close();
+    t.checkExpect(pack.count, 4);
+    t.checkExpect(generator.generated >= 4, true);
+    t.checkExpect(generator.seenCount, 4);
+    t.checkExpect(generator.report(4).startsWith("generated " + generator.generated
+            + " boards, kept 4, dropped " + generator.duplicates + " duplicates in "), true);
+
+    // Every puzzle is a different solved tree, scrambled
+    PuzzlePack read = PuzzlePack.open(file);
+    t.checkExpect(read.count, 4);
+    t.checkExpect(read.width, 2);
+    t.checkExpect(read.seed, 11L);
+    ArrayList<Long> solutions = new ArrayList<Long>();
+    boolean trees = true;
+    for (int id = 0; id < 4; id++) {
+      LightEngine engine = read.load(id);
+      trees = trees && read.diameter(id) == 3 && engine.radius == 2;
+      engine.solve();
+      trees = trees && this.wiredTree(engine.store);
+      Long solution = PackGenerator.hash(engine.store);
+      trees = trees && !solutions.contains(solution);
+      solutions.add(solution);
+    }
+    read.close();
+    t.checkExpect(trees, true);
+
+    // A 2 by 2 board has only 4 solutions
+    pack = PuzzlePack.create(file, 2, 2, 11);
+    new PackGenerator(2, 2, 11, 2).fill(pack, 10);
+    pack.close();
+    t.checkExpect(pack.count, 4);
+    Files.delete(file);
+  }
+
+  //Testing reproducible packs in class PackGenerator
+  void testPackGeneratorSeeds(Tester t) throws IOException {
+    Path first = Files.createTempFile("puzzles", ".lemp");
+    Path second = Files.createTempFile("puzzles", ".lemp");
+    PuzzlePack pack = PuzzlePack.create(first, 6, 5, 3);
+    new PackGenerator(6, 5, 3, 1).fill(pack, 5000);
+    pack.close();
+    pack = PuzzlePack.create(second, 6, 5, 3);
+    new PackGenerator(6, 5, 3, 4).fill(pack, 5000);
+    pack.close();
+    t.checkExpect(Files.size(first), 32L + 5000 * PuzzlePack.recordBytes(30));
+    t.checkExpect(Arrays.equals(Files.readAllBytes(first), Files.readAllBytes(second)), true);
+
+    // Any puzzle is read from its id alone, and its seed makes it again
+    PuzzlePack read = PuzzlePack.open(first);
+    LightEngine puzzle = read.load(4321);
+    LightEngine again = new LightEngine(6, 5);
+    again.reseed(puzzle.seed);
+    again.generateBoard();
+    t.checkExpect(Arrays.equals(again.store.tiles, puzzle.store.tiles), true);
+    t.checkExpect(read.diameter(4321), again.treeDiameter());
+    String error = "";
+    try {
+      read.load(5000);
+    }
+    catch (IOException e) {
+      error = e.getMessage();
+    }
+    t.checkExpect(error, "no puzzle 5000 in a pack of 5000");
+    read.close();
+    Files.delete(first);
+    Files.delete(second);
+  }
+
+  //Testing method rate in class DifficultyRating
+  void testDifficultyRating(Tester t) {
+    // A row of three tiles is forced by propagation alone, six turns from its solution, and
+    // a station of radius 1 at its end has to move to the middle
+    BoardStore row = new BoardStore(3, 1);
+    row.setWires(0, BoardStore.LEFT);
+    row.setWires(1, BoardStore.TOP | BoardStore.BOTTOM);
+    row.setWires(2, BoardStore.TOP);
+    DifficultyRating rating = DifficultyRating.rate(row, 1, 0);
+    t.checkExpect(rating.solvable, true);
+    t.checkExpect(rating.forced, 3);
+    t.checkExpect(rating.guesses, 0L);
+    t.checkExpect(rating.rounds, 1);
+    t.checkExpect(rating.turns, 6);
+    t.checkExpect(rating.diameter, 2);
+    t.checkExpect(rating.travel, 1);
+    t.checkInexact(rating.score, 25.0, 0.0001);
+    t.checkExpect(rating.tierName(), "medium");
+    t.checkExpect(rating.report(),
+            "medium (25): 3 of 3 tiles forced, 0 guesses, 1 rounds, 6 turns, diameter 2 with "
+                    + "radius 1, 1 station moves to light every tile");
+    // From the middle, or with a radius that reaches across, the station has no need to move
+    t.checkExpect(DifficultyRating.rate(row, 1, 1).travel, 0);
+    t.checkInexact(DifficultyRating.rate(row, 1, 1).score, 15.0, 0.0001);
+    t.checkExpect(DifficultyRating.rate(row, 2, 0).travel, 0);
+    // Rating leaves the board as it was
+    t.checkExpect(row.wires(0), BoardStore.LEFT);
+
+    // A loop can never be opened
+    BoardStore loop = new BoardStore(2, 2);
+    for (int tile = 0; tile < 4; tile++) {
+      loop.setWires(tile, BoardStore.RIGHT | BoardStore.BOTTOM);
+    }
+    rating = DifficultyRating.rate(loop, 2, 0);
+    t.checkExpect(rating.solvable, false);
+    t.checkExpect(rating.tier, -1);
+    t.checkExpect(rating.tierName(), "unsolvable");
+
+    // Scores are cut into tiers
+    t.checkExpect(DifficultyRating.tier(0), 0);
+    t.checkExpect(DifficultyRating.tier(20), 1);
+    t.checkExpect(DifficultyRating.tier(49.9), 2);
+    t.checkExpect(DifficultyRating.tier(100), 3);
+
+    // A generated board is rated from its scramble, without changing it
+    LightEngine engine = new LightEngine(12, 9);
+    engine.reseed(5);
+    engine.generateBoard();
+    byte[] scramble = engine.store.tiles.clone();
+    rating = engine.rateDifficulty();
+    t.checkExpect(rating.solvable, true);
+    t.checkExpect(rating.tiles, 108);
+    t.checkExpect(rating.radius, engine.radius);
+    t.checkExpect(rating.forced <= 108 && rating.turns <= 3 * 108, true);
+    t.checkExpect(rating.travel <= rating.diameter - rating.radius, true);
+    t.checkExpect(rating.score >= 0 && rating.score <= 100, true);
+    t.checkExpect(Arrays.equals(engine.store.tiles, scramble), true);
+    // Its signals are those of solving it
+    BoardSolver solver = new BoardSolver(engine.store);
+    solver.solve();
+    t.checkExpect(rating.searchNodes, solver.searchNodes);
+    t.checkExpect(rating.rounds, solver.rounds);
+    t.checkExpect(rating.guesses, solver.decisions);
+  }
+
+  //Testing methods ratePack and tierCounts in class DifficultyRating
+  void testRatePack(Tester t) throws IOException {
+    Path file = Files.createTempFile("puzzles", ".lemp");
+    PuzzlePack pack = PuzzlePack.create(file, 6, 5, 3);
+    new PackGenerator(6, 5, 3, 1).fill(pack, 300);
+    pack.close();
+
+    // Every puzzle is rated as it would be on its own, whatever the number of threads
+    PuzzlePack read = PuzzlePack.open(file);
+    DifficultyRating[] ratings = DifficultyRating.ratePack(read, StripeTask.pool(3));
+    DifficultyRating[] single = DifficultyRating.ratePack(read, StripeTask.pool(1));
+    t.checkExpect(ratings.length, 300);
+    boolean same = true;
+    for (int id = 0; id < 300; id++) {
+      LightEngine puzzle = read.load(id);
+      double score = DifficultyRating.rate(puzzle.store, puzzle.radius, puzzle.station()).score;
+      same = same && ratings[id].score == score && single[id].score == score;
+    }
+    t.checkExpect(same, true);
+    read.close();
+
+    int[] counts = DifficultyRating.tierCounts(ratings);
+    t.checkExpect(counts.length, 5);
+    t.checkExpect(counts[0] + counts[1] + counts[2] + counts[3], 300);
+    t.checkExpect(counts[4], 0);
+
+    // A pack that cannot be read fails as a whole
+    boolean failed = false;
+    try {
+      DifficultyRating.ratePack(read, StripeTask.pool(2));
+    }
+    catch (IOException e) {
+      failed = true;
+    }
+    t.checkExpect(failed, true);
+    Files.delete(file);
+  }
+
+  //Testing the flight recorder events of classes LightEngine and LightEmAll
+  void testFlightRecorderEvents(Tester t) throws IOException {
+    initData();
+    LightEngine engine = this.testGame.engine;
+    Recording recording = new Recording();
+    recording.enable("lightemall.Phase");
+    recording.enable("lightemall.Rotation");
+    recording.enable("lightemall.StationMove");
+    recording.start();
+    engine.updatePower();
+    engine.calculateDiameter();
+    engine.rotateTile(0);
+    engine.movePowerStation(BoardStore.LEFT);
+    this.testGame.makeScene();
+    engine.generateBoard();
+    recording.stop();
+    Path file = Files.createTempFile("game", ".jfr");
+    recording.dump(file);
+    recording.close();
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    Files.delete(file);
+
+    // Every phase is timed over the board, with the tiles it visited
+    ArrayList<String> phases = new ArrayList<String>();
+    RecordedEvent rotation = null;
+    RecordedEvent move = null;
+    for (RecordedEvent event : events) {
+      String name = event.getEventType().getName();
+      if (name.equals("lightemall.Phase")) {
+        String phase = event.getString("phase");
+        phases.add(phase);
+        t.checkExpect(event.getInt("width"), 3);
+        t.checkExpect(event.getInt("height"), 3);
+        if (phases.size() == 1) {
+          // The whole board but the tile with no wires, four of them queued at the start
+          t.checkExpect(phase, "updatePower");
+          t.checkExpect(event.getInt("tilesVisited"), 8);
+          t.checkExpect(event.getInt("queuePeak"), 5);
+        }
+        else if (phase.equals("calculateDiameter")) {
+          t.checkExpect(event.getInt("tilesVisited"), 16);
+        }
+        else if (phase.equals("makeScene") || phase.equals("generateBoard")) {
+          t.checkExpect(event.getInt("tilesVisited"), 9);
+          t.checkExpect(event.getInt("queuePeak"), 0);
+        }
+      }
+      else if (name.equals("lightemall.Rotation")) {
+        rotation = event;
+      }
+      else if (name.equals("lightemall.StationMove")) {
+        move = event;
+      }
+    }
+    t.checkExpect(phases.contains("calculateDiameter"), true);
+    t.checkExpect(phases.contains("repairPower"), true);
+    t.checkExpect(phases.contains("makeScene"), true);
+    t.checkExpect(phases.contains("generateBoard"), true);
+
+    // Rotations and station moves carry what changed
+    t.checkExpect(rotation.getInt("tile"), 0);
+    t.checkExpect(rotation.getInt("oldWires"), BoardStore.RIGHT | BoardStore.BOTTOM);
+    t.checkExpect(rotation.getInt("newWires"), BoardStore.LEFT | BoardStore.BOTTOM);
+    t.checkExpect(rotation.getInt("score"), 1);
+    t.checkExpect(move.getInt("from"), 4);
+    t.checkExpect(move.getInt("to"), 3);
+    t.checkExpect(move.getInt("wire"), BoardStore.LEFT);
+    t.checkExpect(move.getInt("score"), 2);
+
+    // Without a recording, no event is filled in
+    t.checkExpect(new PhaseEvent().shouldCommit(), false);
   }
 
   // Testing method allPowered in class LightEmAll
   void testAllPowered(Tester t) {
     initData();
     // Initial state
-    t.checkExpect(this.testGame.allPowered(), false);
+    t.checkExpect(this.testGame.engine.allPowered(), false);
 
     // All powered
-    this.testGame.nodes.forEach(p -> p.powered = true);
-    t.checkExpect(this.testGame.allPowered(), true);
+    this.testGame.nodes.forEach(p -> p.updatePowerState(true));
+    t.checkExpect(this.testGame.engine.allPowered(), true);
 
     // One unpowered
-    this.gp00.powered = false;
-    t.checkExpect(this.testGame.allPowered(), false);
+    this.gp00.updatePowerState(false);
+    t.checkExpect(this.testGame.engine.allPowered(), false);
+  }
+
+  //Testing methods poweredTiles and percentLit in class LightEngine
+  void testPercentLit(Tester t) {
+    initData();
+    LightEngine engine = this.testGame.engine;
+    this.testGame.nodes.forEach(p -> p.updatePowerState(true));
+    t.checkExpect(engine.poweredTiles(), 9);
+    t.checkExpect(engine.percentLit(), 100);
+    // Only a won board is 100% lit
+    this.gp00.updatePowerState(false);
+    t.checkExpect(engine.percentLit(), 88);
+
+    // The count follows every full update and incremental repair
+    LightEngine game = new LightEngine(12, 9);
+    Random rand = new Random(3);
+    boolean counted = true;
+    for (int move = 0; move < 300; move++) {
+      game.rotateTile(rand.nextInt(108));
+      if (move % 50 == 0) {
+        game.movePowerStation(1 << rand.nextInt(4));
+        game.updatePower();
+      }
+      int lit = game.store.powered.cardinality();
+      counted = counted && game.poweredTiles() == lit
+              && game.percentLit() == lit * 100 / 108
+              && game.allPowered() == (lit == 108);
+    }
+    t.checkExpect(counted, true);
+
+    // A stale power state is brought up to date first
+    game.batchInput = true;
+    game.rotateTile(0);
+    game.poweredTiles();
+    t.checkExpect(game.powerStale, false);
   }
 
   //Testing method getNeighbor in class LightEmAll
   void testGetNeighbor(Tester t) {
     initData();
     // Left neighbor 
-    t.checkExpect(this.testGame.getNeighbor(this.gp11, "left"), this.gp01);
+    t.checkExpect(this.testGame.getNeighbor(this.gp11, "left"), this.gp10);
 
     // Top neighbor 
-    t.checkExpect(this.testGame.getNeighbor(this.gp11, "top"), this.gp10);
+    t.checkExpect(this.testGame.getNeighbor(this.gp11, "top"), this.gp01);
 
     // Invalid direction remains same
     t.checkExpect(this.testGame.getNeighbor(this.gp11, "invalid"), null);
@@ -508,23 +1564,51 @@ class ExamplesLightWorld {
     t.checkExpect(this.testGame.getOppositeDirection("diagonal"), null);
   }
 
-  //Testing method calculateDiameter in class LightEmAll
+  //Testing method calculateDiameter in class LightEngine
   void testCalculateDiameter(Tester t) {
     initData();
     LightEmAll game = new LightEmAll(4, 4);
-    game.rand = new Random(40);
+    game.engine.rand = new Random(40);
     game.generateBoard();
 
     // Verify diameter calculation based on power propagation
-    game.updatePower();
+    game.engine.updatePower();
     // Check that the calculated diameter is non-negative
-    t.checkExpect(game.calculateDiameter() >= 0, true);
+    t.checkExpect(game.engine.calculateDiameter() >= 0, true);
 
     // Check that the diameter does not exceed an expected upper bound 
-    t.checkExpect(game.calculateDiameter() <= 10, true);
+    t.checkExpect(game.engine.calculateDiameter() <= 10, true);
 
     // check ensures the method does not incorrectly report a diameter greater than or equal to 1
-    t.checkExpect(game.calculateDiameter() >= 1, true);
+    t.checkExpect(game.engine.calculateDiameter() >= 1, true);
+  }
+
+  //Testing method treeDiameter in class LightEngine
+  void testTreeDiameter(Tester t) {
+    // The one pass over the tree agrees with the two traversals of the wired board
+    SpanningTreeGenerator[] generators = new SpanningTreeGenerator[] {
+        new KruskalGenerator(), new DepthFirstGenerator(),
+        new WilsonGenerator(), new EllerGenerator(), new ParallelBoruvkaGenerator(2)};
+    for (SpanningTreeGenerator generator : generators) {
+      LightEngine engine = new LightEngine(9, 7, generator);
+      engine.rand = new Random(21);
+      engine.initializeEmptyBoard();
+      engine.generateConnectionsFromMST();
+      engine.store.setDistance(0, 7);
+      engine.store.setDistance(62, 7);
+      int diameter = engine.treeDiameter();
+
+      // The distances of the tiles are left alone
+      t.checkExpect(engine.store.distance(0), 7);
+      t.checkExpect(engine.store.distance(62), 7);
+      t.checkExpect(diameter, engine.calculateDiameter());
+    }
+
+    // A single row is one long path, and a single tile has no path at all
+    LightEngine row = new LightEngine(6, 1);
+    t.checkExpect(row.treeDiameter(), 5);
+    t.checkExpect(row.radius, 3);
+    t.checkExpect(new LightEngine(1, 1).treeDiameter(), 0);
   }
 
   //Testing method findFurthestNode in class LightEmAll
@@ -536,13 +1620,13 @@ class ExamplesLightWorld {
     // Verify furthest node is found and distance is set
     GamePiece furthest = game.findFurthestNode(game.board.get(0).get(0));
     // Verify that the distance from the power source (PS) for the furthest node is non-negative
-    t.checkExpect(furthest.distanceFromPS >= 0, true);
+    t.checkExpect(furthest.getDistanceFromPS() >= 0, true);
 
     // Ensure that a furthest node is found
     t.checkExpect(furthest != null, true);
 
     // Verify that the distance from the PS is within a reasonable upper bound
-    t.checkExpect(furthest.distanceFromPS <= 10, true);
+    t.checkExpect(furthest.getDistanceFromPS() <= 10, true);
   }
 
   //Testing method tileImage in class GamePiece
@@ -560,16 +1644,16 @@ class ExamplesLightWorld {
 
     // Wire count
     int wires = 0;
-    if (this.gp11.top) {
+    if (this.gp11.hasConnectionTo("top")) {
       wires++;
     }
-    if (this.gp11.right) {
+    if (this.gp11.hasConnectionTo("right")) {
       wires++;
     }
-    if (this.gp11.bottom) {
+    if (this.gp11.hasConnectionTo("bottom")) {
       wires++;
     }
-    if (this.gp11.left) {
+    if (this.gp11.hasConnectionTo("left")) {
       wires++;
     }
     t.checkExpect(wires, 4);
@@ -579,28 +1663,29 @@ class ExamplesLightWorld {
   void testRotate(Tester t) {
     initData();
     // Single rotation
-    boolean originalLeft = this.gp00.left;
+    boolean originalLeft = this.gp00.hasConnectionTo("left");
 
-    boolean originalRight = this.gp00.right;
+    boolean originalRight = this.gp00.hasConnectionTo("right");
 
-    boolean originalTop = this.gp00.top;
+    boolean originalTop = this.gp00.hasConnectionTo("top");
 
-    boolean originalBottom = this.gp00.bottom;
+    boolean originalBottom = this.gp00.hasConnectionTo("bottom");
     this.gp00.rotate();
-    t.checkExpect(this.gp00.left, originalBottom);
-    t.checkExpect(this.gp00.top, originalLeft);
-    t.checkExpect(this.gp00.right, originalTop);
-    t.checkExpect(this.gp00.bottom, originalRight);
+    t.checkExpect(this.gp00.hasConnectionTo("left"), originalBottom);
+    t.checkExpect(this.gp00.hasConnectionTo("top"), originalLeft);
+    t.checkExpect(this.gp00.hasConnectionTo("right"), originalTop);
+    t.checkExpect(this.gp00.hasConnectionTo("bottom"), originalRight);
 
     // Full rotation cycle
     this.gp11.rotate();
     this.gp11.rotate();
     this.gp11.rotate();
     this.gp11.rotate();
-    t.checkExpect(this.gp11.left, true);
+    t.checkExpect(this.gp11.hasConnectionTo("left"), true);
 
     // Connection update
-    t.checkExpect(this.gp00.hasConnectionTo("left"), this.gp00.left);
+    t.checkExpect(this.gp00.hasConnectionTo("left"),
+            (this.gp00.wireMask() & BoardStore.LEFT) != 0);
   }
 
   //Testing method updatePowerStation in class GamePiece
@@ -608,7 +1693,7 @@ class ExamplesLightWorld {
     initData();
     // Set station
     this.gp00.updatePowerStation(true);
-    t.checkExpect(this.gp00.powerStation, true);
+    t.checkExpect(this.gp00.isPowerStation(), true);
 
     // Only one station
     this.gp11.updatePowerStation(false);
@@ -616,7 +1701,7 @@ class ExamplesLightWorld {
     // Count power stations
     int stationCount = 0;
     for (GamePiece p : this.testGame.nodes) {
-      if (p.powerStation) {
+      if (p.isPowerStation()) {
         stationCount++;
       }
     }
@@ -624,7 +1709,7 @@ class ExamplesLightWorld {
 
     // Remove station
     this.gp00.updatePowerStation(false);
-    t.checkExpect(this.gp00.powerStation, false);
+    t.checkExpect(this.gp00.isPowerStation(), false);
   }
 
   //Testing method updatePowerState in class GamePiece
@@ -633,15 +1718,15 @@ class ExamplesLightWorld {
     // Enable power
     GamePiece p = new GamePiece(0,0, true, true, true, true);
     p.updatePowerState(true);
-    t.checkExpect(p.powered, true);
+    t.checkExpect(p.isPowered(), true);
 
     // Disable power
     p.updatePowerState(false);
-    t.checkExpect(p.powered, false);
+    t.checkExpect(p.isPowered(), false);
 
     // Toggle power
-    p.updatePowerState(!p.powered);
-    t.checkExpect(p.powered, true);
+    p.updatePowerState(!p.isPowered());
+    t.checkExpect(p.isPowered(), true);
   }
 
   //Testing method updateDistanceFromPS in class GamePiece
@@ -650,17 +1735,17 @@ class ExamplesLightWorld {
     // Update the distance for the game piece at position (0,0)
     this.gp00.updateDistanceFromPS(10);
     // verify the expected distance value
-    t.checkExpect(this.gp00.distanceFromPS, 10);
+    t.checkExpect(this.gp00.getDistanceFromPS(), 10);
 
     // Update the distance for the same game piece (0,0) with a negative value
     this.gp00.updateDistanceFromPS(-1);
     // Verify that distanceFromPS is updated to -1
-    t.checkExpect(this.gp00.distanceFromPS, -1);
+    t.checkExpect(this.gp00.getDistanceFromPS(), -1);
 
     // Update the distance for the game piece at position (1,1) 
     this.gp11.updateDistanceFromPS(0);
     // Verify that distanceFromPS is updated to 0
-    t.checkExpect(this.gp11.distanceFromPS, 0);
+    t.checkExpect(this.gp11.getDistanceFromPS(), 0);
   }
 
   //Testing method hasConnectionTo in class GamePiece
@@ -692,6 +1777,290 @@ class ExamplesLightWorld {
     t.checkExpect(imagePowered.equals(imageUnpowered), false);
   }
 
+  //Testing method colorBucket in class GamePiece
+  void testColorBucket(Tester t) {
+    initData();
+    // The power station is the brightest, an unpowered piece is gray
+    t.checkExpect(this.gp11.colorBucket(this.testGame.engine.radius), 0);
+    t.checkExpect(this.gp22.colorBucket(this.testGame.engine.radius), GamePiece.UNPOWERED);
+    t.checkExpect(this.gp01.colorBucket(this.testGame.engine.radius), 1);
+
+    // Far pieces share the last bucket, where the color stops changing
+    this.gp01.updateDistanceFromPS(40);
+    t.checkExpect(this.gp01.colorBucket(this.testGame.engine.radius), 32);
+    t.checkExpect(GamePiece.PALETTE[32], new Color(255, 0, 0));
+    t.checkExpect(GamePiece.PALETTE[1], new Color(255, 247, 0));
+    t.checkExpect(GamePiece.PALETTE[GamePiece.UNPOWERED], Color.LIGHT_GRAY);
+
+    // Without a radius every powered piece is yellow
+    t.checkExpect(this.gp01.colorBucket(0), 0);
+  }
+
+  //Testing method image in class TileImageCache
+  void testTileImageCache(Tester t) {
+    initData();
+    TileImageCache cache = new TileImageCache(50, 5);
+
+    // A cached image looks the same as a freshly drawn one
+    t.checkExpect(cache.image(this.gp11, this.testGame.engine.radius),
+            this.gp11.drawPowerGamePiece(50, 5, this.testGame.engine.radius));
+    t.checkExpect(cache.image(this.gp22, this.testGame.engine.radius),
+            this.gp22.drawPowerGamePiece(50, 5, this.testGame.engine.radius));
+
+    // Pieces in the same state share one image
+    this.gp00.setWires(true, true, true, true);
+    this.gp00.updatePowerState(true);
+    this.gp00.updateDistanceFromPS(0);
+    this.gp00.updatePowerStation(true);
+    t.checkExpect(cache.image(this.gp00, this.testGame.engine.radius)
+            == cache.image(this.gp11, this.testGame.engine.radius), true);
+
+    // The cache is bounded by the number of tile states
+    t.checkExpect(cache.images.length, 16 * 34 * 2);
+  }
+
+  //Testing method update in class BoardLayer
+  void testBoardLayerUpdate(Tester t) {
+    initData();
+    BoardLayer layer = new BoardLayer(this.testGame.engine.store, this.testGame.layerImages,
+            this.testGame.engine.radius);
+
+    // Nothing changed since the layer was drawn
+    t.checkExpect(layer.update(), 0);
+
+    // Rotating a dead end redraws only that tile, and the layer looks freshly drawn
+    this.testGame.onMousePressed(new Posn(25, 25));
+    t.checkExpect(layer.update(), 1);
+    t.checkExpect(layer.image(), new BoardLayer(this.testGame.engine.store,
+            this.testGame.layerImages, this.testGame.engine.radius).image());
+
+    // A full recomputation that changes nothing marks no tile
+    this.testGame.engine.updatePower();
+    t.checkExpect(this.testGame.engine.store.changed.cardinality(), 0);
+    t.checkExpect(layer.update(), 0);
+
+    // Moving the power station marks only the tiles whose power or distance changed
+    BoardStore store = this.testGame.engine.store;
+    int[] distances = store.distances.clone();
+    BitSet powered = (BitSet) store.powered.clone();
+    this.testGame.engine.movePowerStation(BoardStore.LEFT);
+    this.testGame.engine.refreshPower();
+    BitSet differ = new BitSet();
+    for (int tile = 0; tile < 9; tile++) {
+      if (distances[tile] != store.distance(tile) || powered.get(tile) != store.isPowered(tile)
+              || tile == 3 || tile == 4) {
+        differ.set(tile);
+      }
+    }
+    t.checkExpect(store.changed, differ);
+    t.checkExpect(layer.update() <= differ.cardinality(), true);
+  }
+
+  //Testing method makeRetainedScene in class LightEmAll
+  void testMakeRetainedScene(Tester t) {
+    initData();
+    this.testGame.retainedRendering = true;
+    WorldScene first = this.testGame.makeScene();
+
+    // A frame with no changes reuses the last scene
+    t.checkExpect(this.testGame.makeScene() == first, true);
+
+    // A new time or a rotated tile draws a new scene over the same or an updated layer
+    WorldImage layer = this.testGame.boardLayer.image();
+    this.testGame.onTick();
+    WorldScene second = this.testGame.makeScene();
+    t.checkExpect(second == first, false);
+    t.checkExpect(this.testGame.boardLayer.image() == layer, true);
+    this.testGame.onMousePressed(new Posn(25, 25));
+    t.checkExpect(this.testGame.makeScene() == second, false);
+    t.checkExpect(this.testGame.boardLayer.image() == layer, false);
+
+    // A new board draws a new layer
+    this.testGame.resetGame();
+    this.testGame.makeScene();
+    t.checkExpect(this.testGame.boardLayer.store, this.testGame.engine.store);
+  }
+
+  //Testing method rotate in class BoardStore
+  void testBoardStoreRotate(Tester t) {
+    initData();
+    BoardStore store = this.testGame.engine.store;
+    int index = store.index(0, 0);
+
+    // Right and bottom become bottom and left
+    store.rotate(index);
+    t.checkExpect(store.wires(index), BoardStore.BOTTOM | BoardStore.LEFT);
+
+    // Bottom wraps around to left, left moves to top
+    store.rotate(index);
+    t.checkExpect(store.wires(index), BoardStore.LEFT | BoardStore.TOP);
+
+    // Four rotations give back the original wires
+    store.rotate(index);
+    store.rotate(index);
+    t.checkExpect(store.wires(index), BoardStore.RIGHT | BoardStore.BOTTOM);
+  }
+
+  //Testing method setWires in class BoardStore
+  void testBoardStoreSetWires(Tester t) {
+    initData();
+    BoardStore store = this.testGame.engine.store;
+    int index = store.index(1, 1);
+
+    // Setting wires keeps the power station bit
+    store.setWires(index, BoardStore.TOP);
+    t.checkExpect(store.wires(index), BoardStore.TOP);
+    t.checkExpect(store.isStation(index), true);
+
+    // Adding a wire keeps the existing ones
+    store.addWire(index, BoardStore.LEFT);
+    t.checkExpect(store.hasWire(index, BoardStore.LEFT | BoardStore.TOP), true);
+
+    // The view sees the change
+    t.checkExpect(this.gp11.hasConnectionTo("right"), false);
+  }
+
+  //Testing method setPowered in class BoardStore
+  void testBoardStoreSetPowered(Tester t) {
+    initData();
+    BoardStore store = this.testGame.engine.store;
+
+    // Pieces are views of the store
+    t.checkExpect(store.isPowered(store.index(1, 1)), this.gp11.isPowered());
+    store.setPowered(store.index(2, 2), true);
+    t.checkExpect(this.gp22.isPowered(), true);
+
+    // Only a change of the power state is counted
+    int count = store.powered.cardinality();
+    t.checkExpect(store.poweredCount, count);
+    store.setPowered(store.index(2, 2), true);
+    t.checkExpect(store.poweredCount, count);
+    store.setPowered(store.index(2, 2), false);
+    t.checkExpect(store.poweredCount, count - 1);
+
+    // Clearing unpowers every tile
+    store.clearPowered();
+    t.checkExpect(this.gp11.isPowered(), false);
+    t.checkExpect(store.poweredCount, 0);
+  }
+
+  //Testing method wireOf in class BoardStore
+  void testWireOf(Tester t) {
+    t.checkExpect(BoardStore.wireOf("left"), BoardStore.LEFT);
+    t.checkExpect(BoardStore.wireOf("bottom"), BoardStore.BOTTOM);
+    t.checkExpect(BoardStore.wireOf("invalid"), 0);
+  }
+
+  //Testing method directionOf and the OPPOSITE table in class BoardStore
+  void testDirectionOf(Tester t) {
+    t.checkExpect(BoardStore.directionOf(BoardStore.TOP), "top");
+    t.checkExpect(BoardStore.directionOf(BoardStore.RIGHT), "right");
+    t.checkExpect(BoardStore.directionOf(BoardStore.LEFT | BoardStore.TOP), null);
+    t.checkExpect(BoardStore.directionOf(0), null);
+    t.checkExpect(BoardStore.OPPOSITE[BoardStore.LEFT], (byte) BoardStore.RIGHT);
+    t.checkExpect(BoardStore.OPPOSITE[BoardStore.LEFT | BoardStore.TOP],
+            (byte) (BoardStore.RIGHT | BoardStore.BOTTOM));
+    t.checkExpect(BoardStore.opposite(BoardStore.BOTTOM), BoardStore.TOP);
+  }
+
+  //Testing the sides and offsets tables and method neighbor in class BoardStore
+  void testBoardStoreNeighbor(Tester t) {
+    initData();
+    BoardStore store = this.testGame.engine.store;
+    t.checkExpect(store.sides[0], (byte) (BoardStore.RIGHT | BoardStore.BOTTOM));
+    t.checkExpect(store.sides[4], (byte) 0xF);
+    t.checkExpect(store.sides[8], (byte) (BoardStore.LEFT | BoardStore.TOP));
+    t.checkExpect(store.offsets[BoardStore.TOP], -3);
+    t.checkExpect(store.neighbor(4, BoardStore.BOTTOM), 7);
+    t.checkExpect(store.neighbor(3, BoardStore.LEFT), -1);
+    t.checkExpect(store.neighbor(2, BoardStore.RIGHT), -1);
+    t.checkExpect(store.neighbor(4, 0), -1);
+  }
+
+  //Testing method links in class BoardStore
+  void testBoardStoreLinks(Tester t) {
+    initData();
+    BoardStore store = this.testGame.engine.store;
+    t.checkExpect(store.links(0), BoardStore.RIGHT | BoardStore.BOTTOM);
+    // The tile below the right middle one has no wires to meet it
+    t.checkExpect(store.links(5), BoardStore.LEFT | BoardStore.TOP);
+    t.checkExpect(store.links(8), 0);
+    for (int tile = 0; tile < store.size(); tile++) {
+      for (int wire = BoardStore.LEFT; wire <= BoardStore.BOTTOM; wire <<= 1) {
+        t.checkExpect((store.links(tile) & wire) != 0, store.connected(tile, wire));
+      }
+    }
+  }
+
+  //Testing method add and remove in class Traversal
+  void testTraversalQueue(Tester t) {
+    Traversal bfs = new Traversal(4);
+    bfs.start(4);
+    t.checkExpect(bfs.isEmpty(), true);
+
+    // Tiles come out in the order they went in, across the ring's wrap-around
+    for (int i = 0; i < 12; i++) {
+      bfs.add(i);
+    }
+    for (int i = 0; i < 12; i++) {
+      t.checkExpect(bfs.remove(), i);
+      bfs.add(i + 100);
+    }
+    t.checkExpect(bfs.peek(), 100);
+    t.checkExpect(bfs.peak, 12);
+
+    // The ring grows when it is full, keeping the order
+    for (int i = 0; i < 20; i++) {
+      bfs.add(i + 200);
+    }
+    t.checkExpect(bfs.size, 32);
+    t.checkExpect(bfs.remove(), 100);
+    t.checkExpect(bfs.peak, 32);
+
+    // Starting again forgets the high-water mark
+    bfs.start(4);
+    t.checkExpect(bfs.peak, 0);
+  }
+
+  //Testing method mark in class Traversal
+  void testTraversalMark(Tester t) {
+    Traversal bfs = new Traversal(4);
+    bfs.start(4);
+
+    // A tile is only newly marked once per traversal
+    t.checkExpect(bfs.mark(2), true);
+    t.checkExpect(bfs.mark(2), false);
+    t.checkExpect(bfs.isMarked(2), true);
+    t.checkExpect(bfs.marked, 1);
+
+    // Starting again unmarks every tile without clearing the marks
+    bfs.start(4);
+    t.checkExpect(bfs.isMarked(2), false);
+    t.checkExpect(bfs.marks[2], bfs.epoch - 1);
+    t.checkExpect(bfs.marked, 0);
+
+    // The marks are cleared when the epoch wraps around
+    bfs.epoch = -1;
+    bfs.start(4);
+    t.checkExpect(bfs.epoch, 1);
+    t.checkExpect(bfs.isMarked(2), false);
+  }
+
+  //Testing method sortKeys in class Traversal
+  void testTraversalSortKeys(Tester t) {
+    Traversal bfs = new Traversal(4);
+    bfs.start(4);
+    bfs.collectKey(5, 0);
+    bfs.collectKey(1, 3);
+    bfs.collectKey(2, 1);
+    bfs.sortKeys();
+
+    // Tiles come out ordered by their distance
+    t.checkExpect(bfs.keyTile(0), 3);
+    t.checkExpect(bfs.keyTile(1), 1);
+    t.checkExpect(bfs.keyTile(2), 0);
+  }
+
   //Testing method compareTo in class Edge
   void testCompareTo(Tester t) {
     initData();
@@ -709,40 +2078,388 @@ class ExamplesLightWorld {
     t.checkExpect(edge1.compareTo(edge3), 0);
   }
 
+  // Check that the given edges form a spanning tree over the tiles of the given store
+  boolean spansBoard(BoardStore store, long[] tree) {
+    UnionFind uf = new UnionFind(store.size());
+    int joined = 0;
+    for (long edge : tree) {
+      if (uf.union(store.edgeFrom(Edge.idOf(edge)), store.edgeTo(Edge.idOf(edge)))) {
+        joined++;
+      }
+    }
+    return tree.length == store.size() - 1 && joined == tree.length;
+  }
+
+  //Testing method generate in class KruskalGenerator
+  void testKruskalGenerate(Tester t) {
+    BoardStore store = new BoardStore(7, 5);
+    long[] tree = new KruskalGenerator().generate(store, new Random(3));
+    t.checkExpect(this.spansBoard(store, tree), true);
+
+    // The same seed gives the same tree
+    t.checkExpect(new KruskalGenerator().generate(store, new Random(3)), tree);
+
+    // A single tile has an empty tree
+    t.checkExpect(new KruskalGenerator().generate(new BoardStore(1, 1), new Random(3)).length, 0);
+  }
+
+  //Testing method generate in class DepthFirstGenerator
+  void testDepthFirstGenerate(Tester t) {
+    BoardStore store = new BoardStore(7, 5);
+    long[] tree = new DepthFirstGenerator().generate(store, new Random(3));
+    t.checkExpect(this.spansBoard(store, tree), true);
+    t.checkExpect(new DepthFirstGenerator().generate(store, new Random(3)), tree);
+
+    // A single row is a single corridor
+    BoardStore row = new BoardStore(6, 1);
+    t.checkExpect(this.spansBoard(row, new DepthFirstGenerator().generate(row, new Random(1))),
+            true);
+  }
+
+  //Testing method generate in class WilsonGenerator
+  void testWilsonGenerate(Tester t) {
+    BoardStore store = new BoardStore(7, 5);
+    long[] tree = new WilsonGenerator().generate(store, new Random(3));
+    t.checkExpect(this.spansBoard(store, tree), true);
+    t.checkExpect(new WilsonGenerator().generate(store, new Random(3)), tree);
+
+    BoardStore column = new BoardStore(1, 6);
+    t.checkExpect(this.spansBoard(column, new WilsonGenerator().generate(column, new Random(1))),
+            true);
+  }
+
+  //Testing method generate in class EllerGenerator
+  void testEllerGenerate(Tester t) {
+    BoardStore store = new BoardStore(7, 5);
+    long[] tree = new EllerGenerator().generate(store, new Random(3));
+    t.checkExpect(this.spansBoard(store, tree), true);
+    t.checkExpect(new EllerGenerator().generate(store, new Random(3)), tree);
+
+    BoardStore wide = new BoardStore(40, 2);
+    t.checkExpect(this.spansBoard(wide, new EllerGenerator().generate(wide, new Random(1))), true);
+  }
+
+  //Testing method generate in class ParallelBoruvkaGenerator
+  void testParallelBoruvkaGenerate(Tester t) {
+    BoardStore store = new BoardStore(9, 70);
+    long[] tree = new ParallelBoruvkaGenerator(1).generate(store, new Random(3));
+    t.checkExpect(this.spansBoard(store, tree), true);
+
+    // The same seed gives the same tree on any number of threads
+    t.checkExpect(new ParallelBoruvkaGenerator(3).generate(store, new Random(3)), tree);
+    t.checkExpect(new ParallelBoruvkaGenerator().generate(store, new Random(3)), tree);
+  }
+
+  //Testing method pool in class StripeTask
+  void testStripeTaskPool(Tester t) {
+    // Everything on the same number of threads shares one pool
+    t.checkExpect(StripeTask.pool(3) == StripeTask.pool(3), true);
+    t.checkExpect(StripeTask.pool(3).getParallelism(), 3);
+    t.checkExpect(new ParallelBoruvkaGenerator(3).pool == StripeTask.pool(3), true);
+    t.checkExpect(StripeTask.pool(ForkJoinPool.getCommonPoolParallelism())
+            == ForkJoinPool.commonPool(), true);
+  }
+
+  //Testing method randomizeRotations in class ParallelBoruvkaGenerator
+  void testParallelRandomizeRotations(Tester t) {
+    LightEmAll one = new LightEmAll(9, 70, new ParallelBoruvkaGenerator(1));
+    one.engine.rand = new Random(5);
+    one.generateBoard();
+    LightEmAll many = new LightEmAll(9, 70, new ParallelBoruvkaGenerator(4));
+    many.engine.rand = new Random(5);
+    many.generateBoard();
+
+    // The scrambled boards are the same on any number of threads
+    t.checkExpect(many.engine.store.tiles, one.engine.store.tiles);
+    t.checkExpect(many.engine.radius, one.engine.radius);
+
+    // On an odd width the stripes meet inside a word of the changed bitset, and every
+    // rotated tile is still marked
+    boolean allMarked = true;
+    for (int run = 0; run < 50; run++) {
+      BoardStore store = new BoardStore(33, 100);
+      for (int tile = 0; tile < store.size(); tile++) {
+        store.setWires(tile, BoardStore.LEFT | BoardStore.TOP);
+      }
+      store.changed.clear();
+      new ParallelBoruvkaGenerator(8).randomizeRotations(store, new Random(run));
+      allMarked = allMarked && store.changed.cardinality() == store.size();
+    }
+    t.checkExpect(allMarked, true);
+  }
+
+  //Testing the generator chosen for a LightEmAll
+  void testBoardGenerator(Tester t) {
+    // Each generator builds a board whose wires come from a spanning tree
+    SpanningTreeGenerator[] generators = new SpanningTreeGenerator[] {
+        new KruskalGenerator(), new DepthFirstGenerator(),
+        new WilsonGenerator(), new EllerGenerator(), new ParallelBoruvkaGenerator(2)};
+    for (SpanningTreeGenerator generator : generators) {
+      LightEmAll game = new LightEmAll(6, 6, generator);
+      game.engine.rand = new Random(11);
+      game.generateBoard();
+      t.checkExpect(this.spansBoard(game.engine.store, game.engine.tree), true);
+      t.checkExpect(game.engine.radius > 1, true);
+      int wires = 0;
+      for (GamePiece p : game.nodes) {
+        wires += Integer.bitCount(p.wireMask());
+      }
+      t.checkExpect(wires, 2 * game.engine.tree.length);
+    }
+
+    // The default generator is Kruskal's
+    t.checkExpect(new LightEmAll(2, 2).engine.generator instanceof KruskalGenerator, true);
+  }
+
+  // Check that the wires of the given store agree between neighbors and form a spanning tree
+  boolean wiredTree(BoardStore store) {
+    UnionFind uf = new UnionFind(store.size());
+    int joined = 0;
+    for (int tile = 0; tile < store.size(); tile++) {
+      for (int wire = BoardStore.LEFT; wire <= BoardStore.BOTTOM; wire <<= 1) {
+        if (store.hasWire(tile, wire) && !store.connected(tile, wire)) {
+          return false;
+        }
+      }
+      for (int wire = BoardStore.RIGHT; wire <= BoardStore.BOTTOM; wire <<= 1) {
+        if (store.connected(tile, wire)) {
+          if (!uf.union(tile, store.neighbor(tile, wire))) {
+            return false;
+          }
+          joined++;
+        }
+      }
+    }
+    return joined == store.size() - 1;
+  }
+
+  //Testing method solve in class BoardSolver
+  void testBoardSolverSolve(Tester t) {
+    // Every generator's scrambled boards are solved back into spanning trees
+    SpanningTreeGenerator[] generators = new SpanningTreeGenerator[] {
+        new KruskalGenerator(), new DepthFirstGenerator(),
+        new WilsonGenerator(), new EllerGenerator(), new ParallelBoruvkaGenerator(2)};
+    for (SpanningTreeGenerator generator : generators) {
+      for (int seed = 0; seed < 4; seed++) {
+        BoardStore store = new BoardStore(12, 9);
+        Random rand = new Random(seed);
+        for (long edge : generator.generate(store, rand)) {
+          store.connectEdge(Edge.idOf(edge));
+        }
+        generator.randomizeRotations(store, rand);
+        BoardSolver solver = new BoardSolver(store);
+        t.checkExpect(solver.solve(), true);
+        solver.apply();
+        t.checkExpect(this.wiredTree(store), true);
+      }
+    }
+
+    // A single tile is already solved
+    t.checkExpect(new BoardSolver(new BoardStore(1, 1)).solve(), true);
+
+    // Two tiles without wires can never be joined, and a loop can never be opened
+    t.checkExpect(new BoardSolver(new BoardStore(2, 1)).solve(), false);
+    BoardStore loop = new BoardStore(2, 2);
+    for (int tile = 0; tile < 4; tile++) {
+      loop.setWires(tile, BoardStore.RIGHT | BoardStore.BOTTOM);
+    }
+    t.checkExpect(new BoardSolver(loop).solve(), false);
+  }
+
+  //Testing methods turns, apply and report in class BoardSolver
+  void testBoardSolverTurns(Tester t) {
+    // A row of three tiles can only be an end, a straight and an end
+    BoardStore row = new BoardStore(3, 1);
+    row.setWires(0, BoardStore.LEFT);
+    row.setWires(1, BoardStore.TOP | BoardStore.BOTTOM);
+    row.setWires(2, BoardStore.TOP);
+    BoardSolver solver = new BoardSolver(row);
+    t.checkExpect(solver.solve(), true);
+    t.checkExpect(solver.solution(0), BoardStore.RIGHT);
+    t.checkExpect(solver.solution(1), BoardStore.LEFT | BoardStore.RIGHT);
+    t.checkExpect(solver.turns(0), 2);
+    t.checkExpect(solver.turns(1), 1);
+    t.checkExpect(solver.turns(2), 3);
+    t.checkExpect(solver.report().startsWith("solved 3 tiles in "), true);
+    t.checkExpect(solver.report().endsWith(" ms, " + solver.searchNodes + " search nodes"), true);
+
+    // Applying the solution turns the tiles into it
+    solver.apply();
+    t.checkExpect(row.wires(0), BoardStore.RIGHT);
+    t.checkExpect(row.wires(1), BoardStore.LEFT | BoardStore.RIGHT);
+    t.checkExpect(row.wires(2), BoardStore.LEFT);
+    t.checkExpect(solver.turns(1), 0);
+
+    // The rotations of a mask, and the masks with a wire
+    t.checkExpect(BoardSolver.rotations(BoardStore.LEFT),
+            (1 << 1) | (1 << 2) | (1 << 4) | (1 << 8));
+    t.checkExpect(BoardSolver.rotations(0xF), 1 << 0xF);
+    t.checkExpect(Integer.bitCount(BoardSolver.withWire(BoardStore.TOP, true)), 8);
+    t.checkExpect(BoardSolver.withWire(BoardStore.TOP, false) & (1 << BoardStore.TOP), 0);
+  }
+
+  //Testing method solve in class ParallelBoardSolver
+  void testParallelBoardSolverSolve(Tester t) {
+    // Boards of several regions from every generator are stitched into spanning trees
+    SpanningTreeGenerator[] generators = new SpanningTreeGenerator[] {
+        new KruskalGenerator(), new DepthFirstGenerator(),
+        new WilsonGenerator(), new EllerGenerator(), new ParallelBoruvkaGenerator(2)};
+    for (SpanningTreeGenerator generator : generators) {
+      BoardStore store = new BoardStore(13, 40);
+      Random rand = new Random(4);
+      for (long edge : generator.generate(store, rand)) {
+        store.connectEdge(Edge.idOf(edge));
+      }
+      generator.randomizeRotations(store, rand);
+      BoardStore copy = new BoardStore(13, 40);
+      for (int tile = 0; tile < store.size(); tile++) {
+        copy.setWires(tile, store.wires(tile));
+      }
+
+      ParallelBoardSolver solver = new ParallelBoardSolver(store, 3);
+      t.checkExpect(solver.regions(), 3);
+      t.checkExpect(solver.solve(), true);
+      solver.apply();
+      t.checkExpect(this.wiredTree(store), true);
+      // The regions' solutions only had to be changed near their borders
+      t.checkExpect(solver.widened, false);
+      t.checkExpect(solver.report().endsWith(" near region borders"), true);
+
+      // The solution does not depend on the number of threads
+      ParallelBoardSolver single = new ParallelBoardSolver(copy, 1);
+      t.checkExpect(single.solve(), true);
+      single.apply();
+      t.checkExpect(copy.tiles, store.tiles);
+    }
+
+    // A board with a loop has no solution, whichever region the loop is in
+    BoardStore loop = new BoardStore(2, 20);
+    for (int tile = 0; tile < loop.size(); tile++) {
+      loop.setWires(tile, BoardStore.TOP | BoardStore.BOTTOM);
+    }
+    t.checkExpect(new ParallelBoardSolver(loop, 2).solve(), false);
+  }
+
+  //Testing method regionSolver in class ParallelBoardSolver
+  void testRegionSolver(Tester t) {
+    BoardStore store = new BoardStore(3, 40);
+    ParallelBoardSolver solver = new ParallelBoardSolver(store, 1);
+    BoardSolver first = solver.regionSolver(0);
+    BoardSolver last = solver.regionSolver(2);
+    t.checkExpect(first.size, 48);
+    t.checkExpect(first.openAbove, false);
+    t.checkExpect(first.openBelow, true);
+    t.checkExpect(last.size, 24);
+    t.checkExpect(last.openAbove, true);
+    t.checkExpect(last.openBelow, false);
+
+    // The stitch trusts the regions' solutions away from their borders, at rows 16 and 32
+    t.checkExpect(solver.nearBorder(store.index(0, 1)), false);
+    t.checkExpect(solver.nearBorder(store.index(13, 1)), false);
+    t.checkExpect(solver.nearBorder(store.index(14, 1)), true);
+    t.checkExpect(solver.nearBorder(store.index(17, 1)), true);
+    t.checkExpect(solver.nearBorder(store.index(18, 1)), false);
+    t.checkExpect(solver.nearBorder(store.index(39, 1)), false);
+    t.checkExpect(solver.trusted[store.index(15, 2)], false);
+    t.checkExpect(solver.trusted[store.index(20, 2)], true);
+
+    // A straight in a region open on both sides may lead out of it, but not on a board
+    BoardStore straight = new BoardStore(1, 1);
+    straight.setWires(0, BoardStore.LEFT | BoardStore.RIGHT);
+    BoardSolver region = new BoardSolver(straight, true, true);
+    t.checkExpect(region.solve(), true);
+    t.checkExpect(region.solution(0), BoardStore.TOP | BoardStore.BOTTOM);
+    t.checkExpect(new BoardSolver(straight).solve(), false);
+
+    // A region's solution is tried first when stitching
+    BoardSolver hinted = new BoardSolver(straight, true, true);
+    hinted.hints = new int[] {1 << (BoardStore.TOP | BoardStore.BOTTOM)};
+    t.checkExpect(hinted.firstOption(0, 0xFFFF), 1 << (BoardStore.TOP | BoardStore.BOTTOM));
+    t.checkExpect(hinted.firstOption(0, 0x6), 0x2);
+  }
+
+  //Testing method pack in class Edge
+  void testPack(Tester t) {
+    long packed = Edge.pack(999, 123456);
+
+    // Weight and id come back out
+    t.checkExpect(Edge.weightOf(packed), 999);
+    t.checkExpect(Edge.idOf(packed), 123456);
+
+    // Packed edges order by weight first
+    t.checkExpect(Edge.pack(1, 500) < Edge.pack(2, 0), true);
+  }
+
+  //Testing method edgeTo in class BoardStore
+  void testEdgeTo(Tester t) {
+    initData();
+    BoardStore store = this.testGame.engine.store;
+
+    // Right and bottom edges of the center tile
+    t.checkExpect(store.edgeFrom(store.rightEdge(4)), 4);
+    t.checkExpect(store.edgeTo(store.rightEdge(4)), 5);
+    t.checkExpect(store.edgeTo(store.bottomEdge(4)), 7);
+
+    // Connecting a bottom edge wires both tiles towards each other
+    store.setWires(0, 0);
+    store.setWires(3, 0);
+    store.connectEdge(store.bottomEdge(0));
+    t.checkExpect(store.wires(0), BoardStore.BOTTOM);
+    t.checkExpect(store.wires(3), BoardStore.TOP);
+  }
+
   //Testing method find in class UnionFind
   void testFind(Tester t) {
     initData();
-    UnionFind uf = new UnionFind(testGame.nodes);
+    UnionFind uf = new UnionFind(testGame.nodes.size());
 
     // Initially each node is its own parent
-    t.checkExpect(uf.find(this.gp00), this.gp00);
+    t.checkExpect(uf.find(this.gp00.index), this.gp00.index);
 
     // verify that both find the same root
-    uf.union(this.gp00, this.gp01);
-    GamePiece root = uf.find(this.gp00);
-    t.checkExpect(uf.find(this.gp01), root);
+    uf.union(this.gp00.index, this.gp01.index);
+    int root = uf.find(this.gp00.index);
+    t.checkExpect(uf.find(this.gp01.index), root);
 
     // An unrelated node should still be its own parent
-    t.checkExpect(uf.find(this.gp11) == this.gp11, true);
+    t.checkExpect(uf.find(this.gp11.index) == this.gp11.index, true);
+
+    // A long chain of parents is walked without recursion, and halved on the way
+    UnionFind chain = new UnionFind(1000000);
+    for (int i = 1; i < 1000000; i++) {
+      chain.parent[i] = i - 1;
+    }
+    t.checkExpect(chain.find(999999), 0);
+    t.checkExpect(chain.parent[999999], 999997);
   }
 
   //Testing method union in class UnionFind
   void testUnion(Tester t) {
     initData();
-    UnionFind uf = new UnionFind(this.testGame.nodes);
+    UnionFind uf = new UnionFind(this.testGame.nodes.size());
 
     // Perform the union of gp00 and gp01
-    uf.union(this.gp00, this.gp01);
+    t.checkExpect(uf.union(this.gp00.index, this.gp01.index), true);
     // Check that after the union, gp00 and gp01 are in the same set
-    t.checkExpect(uf.find(this.gp00), uf.find(this.gp01));
+    t.checkExpect(uf.find(this.gp00.index), uf.find(this.gp01.index));
 
     // Perform the union of gp10 and gp11 
-    uf.union(this.gp10, this.gp11);
+    uf.union(this.gp10.index, this.gp11.index);
     // Check that after the union, gp10 and gp11 are in the same set
-    t.checkExpect(uf.find(this.gp10), uf.find(this.gp11));
+    t.checkExpect(uf.find(this.gp10.index), uf.find(this.gp11.index));
 
     // Ensure that gp00 and gp10 are in different sets, as they were not unioned together
-    t.checkExpect(uf.find(this.gp00) == uf.find(this.gp10), false);
+    t.checkExpect(uf.find(this.gp00.index) == uf.find(this.gp10.index), false);
+
+    // Joining the same set again does nothing
+    t.checkExpect(uf.union(this.gp01.index, this.gp00.index), false);
+
+    // The root of higher rank stays the root
+    uf.union(this.gp00.index, this.gp10.index);
+    int root = uf.find(this.gp00.index);
+    uf.union(this.gp22.index, this.gp00.index);
+    t.checkExpect(uf.find(this.gp22.index), root);
+    t.checkExpect(uf.rank[root], (byte) 2);
   }
 
   void testBigBang(Tester t) {